@@ -0,0 +1,281 @@
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// benchmarks for the matrix operations, run from the project root with
+//     javac -d out/bench src/*.java bench/*.java
+//     java -cp out/bench MatrixBenchmark [options]
+// options (all optional, lists are comma separated):
+//     --sizes 8,64,512,2048
+//     --structures dense,sparse,singular,echelon,tridiagonal,symmetric
+//     --benchmarks echelonForm,reducedEchelonForm,determinant,leastSquares,iterativeSolve,toString,addRows,scaleRow,sortRows
+//     --storage NESTED|FLAT
+//     --warmup 3 --iterations 5 (per benchmark, the measurement keeps going until at least 1 second has passed)
+//     --gc (also reports bytes allocated and GC count/time per operation)
+public class MatrixBenchmark {
+
+    private static final String[] ALL_BENCHMARKS = {"echelonForm", "reducedEchelonForm", "determinant",
+            "leastSquares", "iterativeSolve", "toString", "addRows", "scaleRow", "sortRows"};
+
+    // each row kernel benchmark does this many calls per timed operation so the timer resolution doesn't matter
+    private static final int KERNEL_CALLS = 1000;
+
+    private static final long MIN_MEASURE_NANOS = 1_000_000_000L;
+
+    private static int[] sizes = {8, 64, 512, 2048};
+    private static String[] structures = {"dense", "sparse", "singular", "echelon", "tridiagonal", "symmetric"};
+    private static String[] benchmarks = ALL_BENCHMARKS;
+    private static Matrix.StorageMode storage = Matrix.StorageMode.NESTED;
+    private static int warmup = 3;
+    private static int iterations = 5;
+    private static boolean gcProfile = false;
+
+    // results are written here so the JIT can't remove the work being timed
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+
+        parseArgs(args);
+
+        // add the compiled vector/ classes and --add-modules jdk.incubator.vector to time the Vector API kernels
+        System.out.println("row kernels: " + RowKernels.getMode());
+        System.out.printf("%-20s %-12s %6s %14s %12s%s%n", "benchmark", "structure", "size", "avg (us/op)",
+                "ops", gcProfile ? String.format(" %14s %8s %10s", "alloc (B/op)", "gc count", "gc (ms)") : "");
+
+        for (String benchmark : benchmarks) {
+            for (String structure : structures) {
+                for (int size : sizes) {
+                    run(benchmark, structure, size);
+                }
+            }
+        }
+    }
+
+    // runs one benchmark/structure/size combination and prints a line of results
+    private static void run(String benchmark, String structure, int size) {
+
+        double[][] values = generate(structure, size);
+
+        for (int i = 0; i < warmup; i++) {
+            time(benchmark, values);
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        long totalNanos = 0;
+        int ops = 0;
+        while (ops < iterations || totalNanos < MIN_MEASURE_NANOS) {
+            totalNanos += time(benchmark, values);
+            ops++;
+        }
+
+        String gcColumns = "";
+        if (gcProfile) {
+            // includes allocations made setting up each copy of the matrix, which are the same for every build
+            long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            gcColumns = String.format(" %14d %8d %10d", allocated / ops, gcCount() - gcCountBefore,
+                    gcTime() - gcTimeBefore);
+        }
+
+        System.out.printf("%-20s %-12s %6d %14.3f %12d%s%n", benchmark, structure, size,
+                totalNanos / 1000.0 / ops, ops, gcColumns);
+
+    }
+
+    // returns how long one operation took in nanoseconds, not counting the setup of a fresh matrix
+    private static long time(String benchmark, double[][] values) {
+
+        Matrix m = toMatrix(values, benchmark.equals("determinant"));
+        int rows = m.getRows();
+        long start;
+        long result = 0;
+
+        switch (benchmark) {
+            case "echelonForm":
+                start = System.nanoTime();
+                m.echelonForm();
+                break;
+            case "reducedEchelonForm":
+                start = System.nanoTime();
+                m.reducedEchelonForm();
+                break;
+            case "determinant":
+                start = System.nanoTime();
+                result = Double.doubleToLongBits(m.determinant());
+                break;
+            case "leastSquares":
+                start = System.nanoTime();
+                try {
+                    result = Double.doubleToLongBits(m.leastSquares().getResidual());
+                } catch (IllegalStateException e) { // the singular structure has no unique solution
+                    result = -1;
+                }
+                break;
+            case "iterativeSolve": // the singular structure runs to the iteration limit without converging
+                start = System.nanoTime();
+                result = IterativeSolver.solveAugmented(m, IterativeSolver.Method.BICGSTAB).getIterations();
+                break;
+            case "toString":
+                start = System.nanoTime();
+                result = m.toString(true).length();
+                break;
+            case "addRows":
+                start = System.nanoTime();
+                for (int i = 0; i < KERNEL_CALLS; i++) {
+                    m.addRows(i % rows, (i + 1) % rows, 0.5);
+                }
+                break;
+            case "scaleRow":
+                start = System.nanoTime();
+                for (int i = 0; i < KERNEL_CALLS; i++) {
+                    m.scaleRow(i % rows, (i & 1) == 0 ? 2 : 0.5);
+                }
+                break;
+            case "sortRows":
+                start = System.nanoTime();
+                m.sortRows();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + benchmark);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        sink = result;
+        return elapsed;
+
+    }
+
+    // HELPER FUNCTIONS
+
+    // creates the values for a size x size + 1 augmented matrix with the specified structure
+    // (a square size x size matrix for the determinant so it can be calculated)
+    private static double[][] generate(String structure, int size) {
+
+        Random random = new Random(size * 31L + structure.hashCode());
+        int cols = size + 1;
+        double[][] values = new double[size][cols];
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < cols; col++) {
+                switch (structure) {
+                    case "dense":
+                    case "singular":
+                        values[row][col] = random.nextInt(21) - 10;
+                        break;
+                    case "sparse": // about 5% nonzero, with a nonzero diagonal so it isn't singular
+                        if (row == col || random.nextInt(20) == 0) {
+                            values[row][col] = random.nextInt(20) + 1;
+                        }
+                        break;
+                    case "echelon": // already upper triangular
+                        if (col >= row) {
+                            values[row][col] = random.nextInt(20) + 1;
+                        }
+                        break;
+                    case "tridiagonal": // diagonally dominant, like a discretized differential equation
+                        if (col == row) {
+                            values[row][col] = 50;
+                        } else if (Math.abs(col - row) == 1 || col == size) {
+                            values[row][col] = random.nextInt(20) + 1;
+                        }
+                        break;
+                    case "symmetric": // diagonally dominant so it is also positive definite
+                        if (col < row) {
+                            values[row][col] = values[col][row];
+                        } else if (col == row) {
+                            values[row][col] = 10 * size + 1;
+                        } else {
+                            values[row][col] = random.nextInt(21) - 10;
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown structure: " + structure);
+                }
+            }
+        }
+
+        // make the last row the sum of the first two so the coefficient part is singular
+        if (structure.equals("singular") && size > 2) {
+            for (int col = 0; col < cols; col++) {
+                values[size - 1][col] = values[0][col] + values[1][col];
+            }
+        }
+
+        return values;
+    }
+
+    // copies the values into a new matrix, leaving off the augmented column when square is true
+    private static Matrix toMatrix(double[][] values, boolean square) {
+
+        int rows = values.length;
+        int cols = square ? rows : values[0].length;
+
+        Matrix m = new Matrix(rows, cols, storage);
+        for (int row = 0; row < rows; row++) {
+            m.setRow(row, square ? Arrays.copyOf(values[row], cols) : values[row]);
+        }
+
+        return m;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static void parseArgs(String[] args) {
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--structures":
+                    structures = args[++i].split(",");
+                    break;
+                case "--benchmarks":
+                    List<String> chosen = new ArrayList<>(Arrays.asList(args[++i].split(",")));
+                    for (String benchmark : chosen) {
+                        if (!Arrays.asList(ALL_BENCHMARKS).contains(benchmark)) {
+                            throw new IllegalArgumentException("Unknown benchmark: " + benchmark);
+                        }
+                    }
+                    benchmarks = chosen.toArray(new String[0]);
+                    break;
+                case "--storage":
+                    storage = Matrix.StorageMode.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--gc":
+                    gcProfile = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+}
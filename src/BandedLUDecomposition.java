@@ -0,0 +1,281 @@
+import java.util.Arrays;
+
+// LU decomposition with partial pivoting of a banded matrix, one where every nonzero value is at most
+// lowerBandwidth diagonals below the main one and upperBandwidth above it
+// only the band is stored, one short row per matrix row, so factoring costs O(n * lower * (lower + upper))
+// time and O(n * (2 * lower + upper)) memory instead of O(n^3) and O(n^2)
+// row swaps can move values up to lowerBandwidth more diagonals to the right, so each stored row has room for them
+// the multipliers of L are left where they were calculated and the swaps are replayed in the same order when
+// solving, the way LAPACK's banded routines do it, so swaps never have to move L
+public class BandedLUDecomposition {
+
+    private final int SIZE;
+    private final int lower;
+    private final int upper;
+
+    // band[row][col - row + lower] is the value at (row, col), for col from row - lower to row + lower + upper
+    private final double[][] band;
+
+    // pivots[i] is the row that was swapped with row i when column i was eliminated
+    private final int[] pivots;
+
+    private int pivotSign;
+    private boolean singular;
+
+    // whether values within Matrix.PRECISION of 0 are set to 0 as they are calculated, like the row operations do
+    // needed for an echelon form that matches GaussianElimination's, but a determinant or solve is more accurate
+    // without it (a matrix of values all below PRECISION would otherwise look singular)
+    private final boolean snap;
+
+    // factors a copy of the square matrix, values outside the band are treated as 0
+    public BandedLUDecomposition(Matrix m, int lowerBandwidth, int upperBandwidth) {
+        this(squareData(m), lowerBandwidth, upperBandwidth);
+    }
+
+    private BandedLUDecomposition(double[][] values, int lowerBandwidth, int upperBandwidth) {
+        this(values.length, lowerBandwidth, upperBandwidth, false);
+
+        for (int row = 0; row < SIZE; row++) {
+            loadRow(row, values[row]);
+        }
+
+        factor();
+    }
+
+    // factors the leading square part of the storage, without changing it
+    // snap must be true to use copyEchelonFormInto
+    BandedLUDecomposition(MatrixStorage data, int lowerBandwidth, int upperBandwidth, boolean snap) {
+        this(data.getRows(), lowerBandwidth, upperBandwidth, snap);
+
+        double[] rowValues = new double[data.getCols()];
+        for (int row = 0; row < SIZE; row++) {
+            data.copyRow(row, rowValues);
+            loadRow(row, rowValues);
+        }
+
+        factor();
+    }
+
+    private BandedLUDecomposition(int size, int lowerBandwidth, int upperBandwidth, boolean snap) {
+
+        if (lowerBandwidth < 0 || upperBandwidth < 0) {
+            throw new IllegalArgumentException("A bandwidth cannot be negative");
+        }
+
+        this.SIZE = size;
+        this.lower = Math.min(lowerBandwidth, Math.max(0, size - 1));
+        this.upper = Math.min(upperBandwidth, Math.max(0, size - 1));
+        this.snap = snap;
+
+        band = new double[SIZE][2 * lower + upper + 1];
+        pivots = new int[SIZE];
+        pivotSign = 1;
+
+    }
+
+    // ACCESSORS
+
+    public int getSize() {
+        return SIZE;
+    }
+
+    public int getLowerBandwidth() {
+        return lower;
+    }
+
+    public int getUpperBandwidth() {
+        return upper;
+    }
+
+    // whether a zero pivot (within LUDecomposition.pivotTolerance) was found, the same as LUDecomposition.isSingular
+    public boolean isSingular() {
+        return singular;
+    }
+
+    // product of the diagonal of U, with the sign flipped once for every row swap
+    public double determinant() {
+
+        if (singular) return 0;
+
+        double det = pivotSign;
+        for (int i = 0; i < SIZE; i++) {
+            det *= band[i][lower];
+        }
+
+        return det;
+    }
+
+    // solves Ax = b for x in O(n * (2 * lower + upper))
+    public double[] solve(double[] b) {
+
+        if (b.length != SIZE) {
+            throw new IllegalArgumentException("The right hand side must have the same number of rows as the matrix");
+        }
+        if (singular) {
+            throw new IllegalStateException("The matrix is singular, so the system does not have a unique solution");
+        }
+
+        double[] x = b.clone();
+        forwardSubstitute(x, false);
+
+        for (int row = SIZE - 1; row >= 0; row--) {
+            double[] rowArr = band[row];
+            int end = Math.min(SIZE - 1, row + lower + upper);
+            double value = x[row];
+            for (int col = row + 1; col <= end; col++) {
+                value -= rowArr[col - row + lower] * x[col];
+            }
+            x[row] = value / rowArr[lower];
+        }
+
+        return x;
+    }
+
+    // writes the echelon form into the storage: U in the leading square part, with every other column
+    // put through the same row operations, which are also the ones GaussianElimination would have done
+    // only valid when the factorization is not singular
+    void copyEchelonFormInto(MatrixStorage data) {
+
+        if (singular) {
+            throw new IllegalStateException("A singular factorization does not have a complete echelon form");
+        }
+        if (!snap) {
+            throw new IllegalStateException("Only a factorization that snaps to 0 matches elimination's echelon form");
+        }
+
+        int cols = data.getCols();
+        double[][] rest = new double[cols - SIZE][SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = SIZE; col < cols; col++) {
+                rest[col - SIZE][row] = data.get(row, col);
+            }
+        }
+        for (double[] column : rest) {
+            forwardSubstitute(column, true);
+        }
+
+        double[] rowValues = new double[cols];
+        for (int row = 0; row < SIZE; row++) {
+            Arrays.fill(rowValues, 0, SIZE, 0);
+            double[] rowArr = band[row];
+            int end = Math.min(SIZE - 1, row + lower + upper);
+            for (int col = row; col <= end; col++) {
+                rowValues[col] = rowArr[col - row + lower];
+            }
+            for (int col = SIZE; col < cols; col++) {
+                rowValues[col] = rest[col - SIZE][row];
+            }
+            data.setRow(row, rowValues);
+        }
+
+    }
+
+    // HELPER FUNCTIONS
+
+    private static double[][] squareData(Matrix m) {
+        if (m.getRows() != m.getCols()) {
+            throw new IllegalArgumentException("Only a square matrix can be given a banded decomposition");
+        }
+        return m.copyData();
+    }
+
+    private void loadRow(int row, double[] values) {
+        int start = Math.max(0, row - lower);
+        int end = Math.min(SIZE - 1, row + upper);
+        for (int col = start; col <= end; col++) {
+            band[row][col - row + lower] = values[col];
+        }
+    }
+
+    // elimination with partial pivoting, picking the same pivots as GaussianElimination
+    private void factor() {
+
+        double tolerance = LUDecomposition.pivotTolerance(band, 2 * lower + upper + 1);
+
+        for (int col = 0; col < SIZE; col++) {
+
+            // only the rows within the lower band can have a value in this column
+            int lastRow = Math.min(SIZE - 1, col + lower);
+            int pivotRow = col;
+            double pivotMagnitude = 0;
+            for (int row = col; row <= lastRow; row++) {
+                double magnitude = Math.abs(band[row][col - row + lower]);
+                if (magnitude > pivotMagnitude) {
+                    pivotMagnitude = magnitude;
+                    pivotRow = row;
+                }
+            }
+
+            if (pivotMagnitude <= tolerance) {
+                singular = true;
+                return;
+            }
+
+            // everything from this column on, how far right a value can be in the rows being changed
+            int lastCol = Math.min(SIZE - 1, col + lower + upper);
+            int width = lastCol - col + 1;
+
+            pivots[col] = pivotRow;
+            if (pivotRow != col) {
+                double[] pivotArr = band[pivotRow];
+                double[] colArr = band[col];
+                int pivotOffset = col - pivotRow + lower;
+                for (int i = 0; i < width; i++) {
+                    double temp = pivotArr[pivotOffset + i];
+                    pivotArr[pivotOffset + i] = colArr[lower + i];
+                    colArr[lower + i] = temp;
+                }
+                pivotSign = -pivotSign;
+                SolverMetrics.count(SolverMetrics.Counter.ROW_SWAPS, 1);
+            }
+
+            double[] pivotArr = band[col];
+            double pivotValue = pivotArr[lower];
+            for (int row = col + 1; row <= lastRow; row++) {
+                double[] rowArr = band[row];
+                int offset = col - row + lower;
+                double value = rowArr[offset];
+                if (value != 0) {
+                    double multiplier = value / pivotValue;
+                    rowArr[offset] = multiplier;
+                    if (snap) {
+                        RowKernels.axpy(pivotArr, lower + 1, rowArr, offset + 1, width - 1, -multiplier);
+                    } else {
+                        for (int i = 1; i < width; i++) {
+                            rowArr[offset + i] -= multiplier * pivotArr[lower + i];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // applies the row swaps and L^-1 to b, in the order they were made while factoring
+    // with snap, values within Matrix.PRECISION of 0 are set to 0 as they are calculated, like the row operations do
+    private void forwardSubstitute(double[] b, boolean snap) {
+
+        for (int col = 0; col < SIZE; col++) {
+
+            int pivotRow = pivots[col];
+            if (pivotRow != col) {
+                double temp = b[pivotRow];
+                b[pivotRow] = b[col];
+                b[col] = temp;
+            }
+
+            double value = b[col];
+            if (value == 0) continue;
+
+            int lastRow = Math.min(SIZE - 1, col + lower);
+            for (int row = col + 1; row <= lastRow; row++) {
+                double multiplier = band[row][col - row + lower];
+                if (multiplier != 0) {
+                    b[row] += value * -multiplier;
+                    if (snap && Math.abs(b[row]) < Matrix.PRECISION) {
+                        b[row] = 0;
+                    }
+                }
+            }
+        }
+    }
+}
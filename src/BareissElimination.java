@@ -0,0 +1,214 @@
+import java.math.BigInteger;
+
+// exact, fraction-free elimination (Bareiss' algorithm) for matrices that only contain integers
+// every step divides by the previous pivot, which always divides evenly, so all values stay integers
+// values are kept as longs and a row is only switched over to BigInteger when one of its values overflows,
+// it is switched back once everything in it fits in a long again
+public class BareissElimination {
+
+    private final int ROWS;
+    private final int COLS;
+
+    // a row is stored in small while it fits in longs, or in big (with small[row] unused) once it doesn't
+    private final long[][] small;
+    private final BigInteger[][] big;
+
+    private int rank;
+
+    // +1 or -1 depending on whether an even or odd number of row swaps were made
+    private int swapSign = 1;
+
+    // the last pivot, which the last row of a square matrix ends up holding the determinant in
+    private BigInteger lastPivot = BigInteger.ONE;
+
+    // reduces a copy of the matrix, which must only contain integers (within the range doubles hold exactly)
+    public BareissElimination(Matrix m) {
+
+        if (!isIntegerMatrix(m)) {
+            throw new IllegalArgumentException("Exact elimination needs a matrix that only contains integers");
+        }
+
+        this.ROWS = m.getRows();
+        this.COLS = m.getCols();
+
+        small = new long[ROWS][COLS];
+        big = new BigInteger[ROWS][];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                small[row][col] = (long) m.get(row, col);
+            }
+        }
+
+        eliminate();
+
+    }
+
+    // whether every value is an integer that a double can hold exactly
+    public static boolean isIntegerMatrix(Matrix m) {
+
+        final double LARGEST_EXACT = 9007199254740992.0; // 2^53
+
+        for (int row = 0; row < m.getRows(); row++) {
+            for (int col = 0; col < m.getCols(); col++) {
+                double value = m.get(row, col);
+                if (value != Math.rint(value) || Math.abs(value) > LARGEST_EXACT) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // ACCESSORS
+
+    public int getRank() {
+        return rank;
+    }
+
+    // the value at a location of the echelon form
+    public BigInteger get(int row, int col) {
+        return big[row] != null ? big[row][col] : BigInteger.valueOf(small[row][col]);
+    }
+
+    // the exact determinant, which Bareiss' algorithm leaves as the last pivot of a square matrix
+    public BigInteger determinant() {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find the determinant");
+        }
+
+        if (rank < ROWS) return BigInteger.ZERO;
+
+        return swapSign < 0 ? lastPivot.negate() : lastPivot;
+    }
+
+    // writes the echelon form into data, values too large for a double lose precision
+    void copyInto(MatrixStorage data) {
+
+        double[] rowValues = new double[COLS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                rowValues[col] = big[row] != null ? big[row][col].doubleValue() : small[row][col];
+            }
+            data.setRow(row, rowValues);
+        }
+
+    }
+
+    // HELPER FUNCTIONS
+
+    private void eliminate() {
+
+        int pivotRow = 0;
+        for (int col = 0; col < COLS && pivotRow < ROWS; col++) {
+
+            // any nonzero value works as a pivot since the arithmetic is exact
+            // pick the first one, preferring rows that still fit in longs
+            int found = -1;
+            for (int row = pivotRow; row < ROWS; row++) {
+                if (!isZero(row, col) && (found == -1 || (big[found] != null && big[row] == null))) {
+                    found = row;
+                    if (big[row] == null) break;
+                }
+            }
+
+            if (found == -1) continue; // no pivot in this column
+
+            if (found != pivotRow) {
+                swapRows(found, pivotRow);
+                swapSign = -swapSign;
+            }
+
+            for (int row = pivotRow + 1; row < ROWS; row++) {
+                updateRow(row, pivotRow, col);
+            }
+
+            lastPivot = get(pivotRow, col);
+            pivotRow++;
+        }
+
+        rank = pivotRow;
+    }
+
+    // row = (pivot * row - row[col] * pivotRow) / lastPivot, for every column after col
+    // row[col] becomes 0, the columns before col are already 0
+    private void updateRow(int row, int pivotRow, int col) {
+
+        if (big[row] == null && big[pivotRow] == null && lastPivot.bitLength() < 64) {
+            try {
+                long[] target = small[row];
+                long[] source = small[pivotRow];
+                long pivot = source[col];
+                long factor = target[col];
+                long divisor = lastPivot.longValue();
+
+                // work on a copy so the row is left untouched if something overflows part way through
+                long[] updated = target.clone();
+                updated[col] = 0;
+                for (int c = col + 1; c < COLS; c++) {
+                    long numerator = Math.subtractExact(Math.multiplyExact(pivot, target[c]),
+                            Math.multiplyExact(factor, source[c]));
+                    updated[c] = numerator / divisor;
+                }
+                small[row] = updated;
+                return;
+            } catch (ArithmeticException e) {
+                // fall through and do this row with BigIntegers
+            }
+        }
+
+        promote(row);
+        BigInteger[] target = big[row];
+        BigInteger pivot = get(pivotRow, col);
+        BigInteger factor = target[col];
+        target[col] = BigInteger.ZERO;
+        for (int c = col + 1; c < COLS; c++) {
+            target[c] = pivot.multiply(target[c]).subtract(factor.multiply(get(pivotRow, c))).divide(lastPivot);
+        }
+        demoteIfPossible(row);
+
+    }
+
+    private boolean isZero(int row, int col) {
+        return big[row] != null ? big[row][col].signum() == 0 : small[row][col] == 0;
+    }
+
+    private void swapRows(int row1, int row2) {
+
+        long[] tempSmall = small[row1];
+        small[row1] = small[row2];
+        small[row2] = tempSmall;
+
+        BigInteger[] tempBig = big[row1];
+        big[row1] = big[row2];
+        big[row2] = tempBig;
+
+    }
+
+    // switches a row over to BigIntegers
+    private void promote(int row) {
+
+        if (big[row] != null) return;
+
+        big[row] = new BigInteger[COLS];
+        for (int col = 0; col < COLS; col++) {
+            big[row][col] = BigInteger.valueOf(small[row][col]);
+        }
+
+    }
+
+    // switches a row back to longs if every value in it fits
+    private void demoteIfPossible(int row) {
+
+        for (BigInteger value : big[row]) {
+            if (value.bitLength() >= 64) return;
+        }
+
+        for (int col = 0; col < COLS; col++) {
+            small[row][col] = big[row][col].longValue();
+        }
+        big[row] = null;
+
+    }
+}
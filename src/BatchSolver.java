@@ -0,0 +1,175 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// solves a stream of independent matrices on a fixed pool of threads, for non-interactive use
+// the input is a series of blocks separated by blank lines, each one a line of operations followed by
+// the rows of its matrix, written the same way as MatrixLoader's text format:
+//     ERD
+//     1 2 3
+//     4 5 6
+// the operations are E (echelon form), R (reduced echelon form) and D (determinant), done in the order given
+// the determinant is always of the matrix as it was inputted, even if it comes after E or R
+// results are written in the same order as the input, no matter which matrix finishes first
+// at most maxPending matrices are read ahead of the output, so a slow output holds back the reading
+// instead of the whole input piling up in memory
+public class BatchSolver {
+
+    // a matrix stream is read from a different thread than results are written from,
+    // this marks the end of the stream in the queue between them
+    private static final Future<String> END = CompletableFuture.completedFuture(null);
+
+    private final int threads;
+    private final int maxPending;
+
+    public BatchSolver(int threads, int maxPending) {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least 1 thread");
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("At least 1 matrix must be able to be pending");
+        }
+
+        this.threads = threads;
+        this.maxPending = maxPending;
+
+    }
+
+    // solves every matrix in the input and writes the results to the output
+    // returns the number of matrices solved
+    public long run(InputStream in, OutputStream out) throws IOException {
+
+        BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(maxPending);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread reader = new Thread(() -> readMatrices(in, executor, pending), "batch-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long solved = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            while (true) {
+                Future<String> result = pending.take();
+                if (result == END) break;
+
+                writer.write(result.get());
+                solved++;
+            }
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while solving matrices", e);
+        } catch (ExecutionException e) {
+            writer.flush(); // keep the results before the failure
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            reader.interrupt();
+            executor.shutdownNow();
+        }
+
+        return solved;
+    }
+
+    // HELPER FUNCTIONS
+
+    // runs on its own thread, submitting each matrix as it is read and queueing its result in input order
+    // a problem with the input is queued as a failed result so it is reported after everything before it
+    private void readMatrices(InputStream in, ExecutorService executor, BlockingQueue<Future<String>> pending) {
+
+        try {
+            MatrixLoader.NumberTokenizer tokens = new MatrixLoader.NumberTokenizer(in, '#');
+            long index = 0;
+
+            while (tokens.skipBlankLines()) {
+
+                int line = tokens.getLine();
+                String operations = tokens.readHeaderLine().trim().toUpperCase();
+                if (!operations.matches("[ERD]+")) {
+                    throw new IllegalArgumentException("Line " + line + " should list the operations (E, R or D)" +
+                            " to do on the next matrix, but is \"" + operations + "\"");
+                }
+
+                Matrix m = MatrixLoader.readTextBlock(tokens, Matrix.StorageMode.NESTED);
+                if (m == null) {
+                    throw new IllegalArgumentException("The operations on line " + line + " have no matrix");
+                }
+
+                long number = ++index;
+                pending.put(executor.submit(() -> solve(number, operations, m)));
+            }
+
+            pending.put(END);
+        } catch (InterruptedException e) {
+            // the output stopped, so nothing is waiting for the rest of the input
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            try {
+                pending.put(failed);
+            } catch (InterruptedException ignored) {
+                // the output already stopped
+            }
+        }
+
+    }
+
+    // does each operation on the matrix, returning everything to write for it
+    private static String solve(long number, String operations, Matrix m) throws IOException {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("Matrix ").append(number).append('\n');
+
+        // find the determinant before E or R changes the matrix
+        String determinant = null;
+        if (operations.indexOf('D') != -1) {
+            try {
+                determinant = "The determinant is: " + m.determinant() + "\n";
+            } catch (IllegalArgumentException e) {
+                determinant = "Could not calculate the determinant: " + e.getMessage() + "\n";
+            }
+        }
+
+        for (int i = 0; i < operations.length(); i++) {
+            switch (operations.charAt(i)) {
+                case 'E':
+                    m.echelonForm();
+                    builder.append("Echelon form:\n");
+                    MatrixRenderer.render(m, true, builder);
+                    break;
+                case 'R':
+                    m.reducedEchelonForm();
+                    builder.append("Reduced echelon form:\n");
+                    MatrixRenderer.render(m, true, builder);
+                    break;
+                case 'D':
+                    builder.append(determinant);
+                    break;
+            }
+        }
+
+        return builder.append('\n').toString();
+    }
+}
@@ -0,0 +1,118 @@
+// stores every value in one row-major array so rows sit next to each other in memory
+// row swaps only update the rowOrder permutation, the values themselves never move
+// the array can be shared with copies of the matrix (see share), and is only copied by the first write to it,
+// all at once so the rows stay contiguous
+public class FlatStorage implements MatrixStorage {
+
+    private final int ROWS;
+    private final int COLS;
+
+    private double[] data;
+
+    // rowOrder[row] is which stored row is currently at that position in the matrix
+    private final int[] rowOrder;
+
+    // true while data may also belong to another storage
+    // volatile since the first write can come from any of GaussianElimination's threads
+    private volatile boolean shared;
+
+    public FlatStorage(int rows, int cols) {
+
+        if ((long) rows * cols > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The matrix is too large to be stored in a single array");
+        }
+
+        this.ROWS = rows;
+        this.COLS = cols;
+
+        data = new double[ROWS * COLS];
+        rowOrder = new int[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            rowOrder[row] = row;
+        }
+
+    }
+
+    // a storage using the same array as source, which is shared by both
+    private FlatStorage(FlatStorage source) {
+
+        this.ROWS = source.ROWS;
+        this.COLS = source.COLS;
+
+        data = source.data;
+        rowOrder = source.rowOrder.clone();
+        shared = true;
+
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    public double get(int row, int col) {
+        return data[rowOrder[row] * COLS + col];
+    }
+
+    public void copyRow(int row, double[] dest) {
+        System.arraycopy(data, rowOrder[row] * COLS, dest, 0, COLS);
+    }
+
+    public double dotRow(int row, double[] x, int length) {
+        return RowKernels.dot(data, rowOrder[row] * COLS, x, length);
+    }
+
+    // only copies the row order, O(rows) instead of O(rows * cols)
+    public synchronized FlatStorage share() {
+        shared = true;
+        return new FlatStorage(this);
+    }
+
+    // MUTATORS
+
+    public void set(int row, int col, double value) {
+        ownData()[rowOrder[row] * COLS + col] = value;
+    }
+
+    public void setRow(int row, double[] values) {
+        System.arraycopy(values, 0, ownData(), rowOrder[row] * COLS, COLS);
+    }
+
+    public void swapRows(int row1, int row2) {
+        SolverMetrics.count(SolverMetrics.Counter.ROW_SWAPS, 1);
+        int temp = rowOrder[row1];
+        rowOrder[row1] = rowOrder[row2];
+        rowOrder[row2] = temp;
+    }
+
+    public void scaleRow(int row, double scalar) {
+        RowKernels.scale(ownData(), rowOrder[row] * COLS, COLS, scalar);
+    }
+
+    public void addRows(int row1, int row2, double scalar) {
+        double[] values = ownData();
+        RowKernels.axpy(values, rowOrder[row1] * COLS, values, rowOrder[row2] * COLS, COLS, scalar);
+    }
+
+    // HELPER FUNCTIONS
+
+    // returns the array, copying it first if another storage may still be using it
+    private double[] ownData() {
+        if (shared) {
+            copyData();
+        }
+        return data;
+    }
+
+    private synchronized void copyData() {
+        if (shared) {
+            data = data.clone();
+            shared = false;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// row reduction routines used by Matrix.echelonForm and Matrix.reducedEchelonForm
+// works directly on the storage of a matrix, so bounds are assumed to already be valid
+public final class GaussianElimination {
+
+    // how many threads the row updates of a single pivot can be split across
+    // can be pinned with -Dmatrixsolver.parallelism=N, a value of 1 always uses the serial path
+    // volatile since forEachRow reads the settings without taking the lock
+    private static volatile int parallelism = Integer.getInteger("matrixsolver.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    // minimum number of values a pivot step has to update before the work is split across threads
+    // below this the overhead of forking is more than the time saved
+    private static volatile int parallelThreshold = Integer.getInteger("matrixsolver.parallelThreshold", 1 << 16);
+
+    private static ForkJoinPool pool;
+
+    private GaussianElimination() {
+    }
+
+    // SETTINGS
+
+    public static synchronized void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+
+        if (threads != parallelism) {
+            parallelism = threads;
+            // the next forEachRow creates a new pool, the old one isn't shut down since other threads may still
+            // be running (or just about to start) their rows on it, it drains instead, and its workers end
+            // once they have been idle for ForkJoinPool's keep alive time
+            pool = null;
+        }
+    }
+
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    public static void setParallelThreshold(int values) {
+        if (values < 0) {
+            throw new IllegalArgumentException("Parallel threshold cannot be negative");
+        }
+
+        parallelThreshold = values;
+    }
+
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    // puts the values into echelon form and returns the rank (number of pivot rows)
+    // each column's pivot is the row with the largest value in that column (partial pivoting)
+    // which is moved into place with a single swap, instead of resorting every row after each step
+    public static int echelonForm(MatrixStorage data) {
+
+        int rows = data.getRows();
+        int cols = data.getCols();
+
+        // how many leading 0s each row has (cols for a full zero row)
+        // updated only for rows that change, and swapped along with the rows
+        int[] leadingZeros = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            leadingZeros[row] = leadingZeros(data, row, 0);
+        }
+
+        int pivotRow = 0;
+        for (int col = 0; col < cols && pivotRow < rows; col++) {
+
+            // every row at or below pivotRow has at least col leading zeros at this point,
+            // so the candidates are the ones that have exactly col of them
+            int bestRow = -1;
+            double bestMagnitude = 0;
+            for (int row = pivotRow; row < rows; row++) {
+                if (leadingZeros[row] == col) {
+                    double magnitude = Math.abs(data.get(row, col));
+                    if (magnitude > bestMagnitude) {
+                        bestMagnitude = magnitude;
+                        bestRow = row;
+                    }
+                }
+            }
+
+            if (bestRow == -1) continue; // no pivot in this column
+
+            if (bestRow != pivotRow) {
+                data.swapRows(bestRow, pivotRow);
+                int temp = leadingZeros[bestRow];
+                leadingZeros[bestRow] = leadingZeros[pivotRow];
+                leadingZeros[pivotRow] = temp;
+            }
+
+            // zero out the rest of the column, only rows with a value in it need to be touched
+            // each row is updated independently of the others so they can be done in parallel
+            final int pivot = pivotRow;
+            final int pivotCol = col;
+            final double pivotValue = data.get(pivotRow, col);
+            forEachRow(pivotRow + 1, rows, cols - col, row -> {
+                if (leadingZeros[row] == pivotCol) {
+                    zeroInColumn(data, pivot, row, pivotCol, pivotValue);
+                    leadingZeros[row] = leadingZeros(data, row, pivotCol + 1);
+                }
+            });
+
+            pivotRow++;
+        }
+
+        return pivotRow;
+    }
+
+    // takes values already in echelon form to reduced echelon form
+    // clears each pivot column from the bottom up and scales each pivot to 1
+    public static void backSubstitute(MatrixStorage data) {
+
+        int rows = data.getRows();
+
+        normalizeRow(data, 0);
+        for (int row = rows - 1; row > 0; row--) {
+
+            int pivotCol = leadingZeros(data, row, 0);
+            if (pivotCol < data.getCols()) { // nothing to do for a zero row
+
+                final int pivot = row;
+                final double pivotValue = data.get(row, pivotCol);
+                forEachRow(0, row, data.getCols(), other -> {
+                    if (data.get(other, pivotCol) != 0) {
+                        zeroInColumn(data, pivot, other, pivotCol, pivotValue);
+                    }
+                });
+
+                normalizeRow(data, row);
+            }
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    // runs rowUpdate on every row from start (inclusive) to end (exclusive)
+    // splits the rows across the pool when there are enough values (rows * width) to be worth it
+    // also used by IterativeSolver for its matrix-vector products, so they share the same pool and settings
+    static void forEachRow(int start, int end, int width, IntConsumer rowUpdate) {
+
+        long work = (long) (end - start) * width;
+        if (parallelism == 1 || work < parallelThreshold || end - start < 2) {
+            for (int row = start; row < end; row++) {
+                rowUpdate.accept(row);
+            }
+            return;
+        }
+
+        // enough rows per task that each one does about a threshold's worth of work
+        int rowsPerTask = Math.max(1, parallelThreshold / Math.max(1, width));
+        getPool().invoke(new RowRangeTask(start, end, rowsPerTask, rowUpdate));
+
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    // adds pivotRow to targetRow so targetRow has a value of 0 in col
+    static void zeroInColumn(MatrixStorage data, int pivotRow, int targetRow, int col, double pivotValue) {
+
+        data.addRows(pivotRow, targetRow, -data.get(targetRow, col) / pivotValue);
+
+        // gets rid of those pesky values like 2 * 10^-14 that
+        // should be zero, but aren't due to floating point error
+        data.set(targetRow, col, 0);
+
+    }
+
+    // scales the row so that its leading coefficient = 1
+    private static void normalizeRow(MatrixStorage data, int row) {
+
+        int pivotCol = leadingZeros(data, row, 0);
+        if (pivotCol < data.getCols()) {
+            double pivotValue = data.get(row, pivotCol);
+            if (pivotValue != 1) {
+                data.scaleRow(row, 1 / pivotValue);
+            }
+        }
+
+    }
+
+    // counts leading zeros in a row, starting the scan at fromCol when the earlier columns are known to be 0
+    private static int leadingZeros(MatrixStorage data, int row, int fromCol) {
+
+        int cols = data.getCols();
+        for (int col = fromCol; col < cols; col++) {
+            if (data.get(row, col) != 0) return col;
+        }
+
+        return cols;
+    }
+
+    // splits a range of rows in half until each piece is small enough to update directly
+    private static class RowRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int rowsPerTask;
+        private final IntConsumer rowUpdate;
+
+        RowRangeTask(int start, int end, int rowsPerTask, IntConsumer rowUpdate) {
+            this.start = start;
+            this.end = end;
+            this.rowsPerTask = rowsPerTask;
+            this.rowUpdate = rowUpdate;
+        }
+
+        protected void compute() {
+            if (end - start <= rowsPerTask) {
+                for (int row = start; row < end; row++) {
+                    rowUpdate.accept(row);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RowRangeTask(start, middle, rowsPerTask, rowUpdate),
+                        new RowRangeTask(middle, end, rowsPerTask, rowUpdate));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+// ILU(0): an LU factorization of a sparse matrix that throws away every value that would fall outside the
+// matrix's own nonzeros, so L and U together take exactly as much memory as the matrix
+// usually a much better preconditioner than Jacobi, at the cost of two sparse triangular solves per iteration
+// a dense Matrix can be converted with SparseMatrix.fromMatrix, but with every value nonzero this is just LU
+public class IncompleteLU implements Preconditioner {
+
+    private final int SIZE;
+
+    // L (below the diagonal, unit diagonal implied) and U (the rest), in the same layout as the matrix's rows
+    private final int[][] cols;
+    private final double[][] values;
+
+    // index of the diagonal value within each row
+    private final int[] diagonals;
+
+    public IncompleteLU(SparseMatrix a) {
+
+        if (a.getRows() != a.getCols()) {
+            throw new IllegalArgumentException("Only a square matrix can be preconditioned");
+        }
+
+        SIZE = a.getRows();
+        cols = new int[SIZE][];
+        values = new double[SIZE][];
+        diagonals = new int[SIZE];
+
+        for (int row = 0; row < SIZE; row++) {
+            int size = a.getRowNonZeroCount(row);
+            cols[row] = Arrays.copyOf(a.getRowCols(row), size);
+            values[row] = Arrays.copyOf(a.getRowValues(row), size);
+            diagonals[row] = Arrays.binarySearch(cols[row], row);
+            if (diagonals[row] < 0) {
+                throw new IllegalArgumentException("Row " + (row + 1) + " has a 0 on the diagonal, " +
+                        "so it can't be factored without pivoting");
+            }
+        }
+
+        factor();
+
+    }
+
+    // solves L U z = r
+    public void apply(double[] r, double[] z) {
+
+        for (int row = 0; row < SIZE; row++) {
+            int[] rowCols = cols[row];
+            double[] rowValues = values[row];
+            double value = r[row];
+            for (int i = 0; i < diagonals[row]; i++) {
+                value -= rowValues[i] * z[rowCols[i]];
+            }
+            z[row] = value;
+        }
+
+        for (int row = SIZE - 1; row >= 0; row--) {
+            int[] rowCols = cols[row];
+            double[] rowValues = values[row];
+            int diagonal = diagonals[row];
+            double value = z[row];
+            for (int i = diagonal + 1; i < rowCols.length; i++) {
+                value -= rowValues[i] * z[rowCols[i]];
+            }
+            z[row] = value / rowValues[diagonal];
+        }
+
+    }
+
+    // HELPER FUNCTIONS
+
+    // row by row (IKJ) elimination, only updating values that are already in the row
+    private void factor() {
+
+        // where each column is in the row being eliminated, -1 for columns it doesn't have
+        int[] positions = new int[SIZE];
+        Arrays.fill(positions, -1);
+
+        for (int row = 0; row < SIZE; row++) {
+            int[] rowCols = cols[row];
+            double[] rowValues = values[row];
+            for (int i = 0; i < rowCols.length; i++) {
+                positions[rowCols[i]] = i;
+            }
+
+            for (int i = 0; i < diagonals[row]; i++) {
+                int k = rowCols[i];
+                double[] pivotValues = values[k];
+                double pivot = pivotValues[diagonals[k]];
+                if (pivot == 0) {
+                    throw new IllegalArgumentException("A 0 pivot came up in row " + (k + 1) +
+                            " while factoring, so the matrix can't be used for ILU(0)");
+                }
+
+                double multiplier = rowValues[i] / pivot;
+                rowValues[i] = multiplier;
+
+                int[] pivotCols = cols[k];
+                for (int j = diagonals[k] + 1; j < pivotCols.length; j++) {
+                    int position = positions[pivotCols[j]];
+                    if (position != -1) {
+                        rowValues[position] -= multiplier * pivotValues[j];
+                    }
+                }
+            }
+
+            for (int col : rowCols) {
+                positions[col] = -1;
+            }
+            if (rowValues[diagonals[row]] == 0) {
+                throw new IllegalArgumentException("A 0 pivot came up in row " + (row + 1) +
+                        " while factoring, so the matrix can't be used for ILU(0)");
+            }
+        }
+    }
+}
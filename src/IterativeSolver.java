@@ -0,0 +1,525 @@
+import java.util.Arrays;
+
+// solves square systems Ax = b with Krylov methods, which only ever multiply A by a vector
+// each iteration costs one or two matrix-vector products (O(nonzeros)) instead of elimination's O(n^3) with fill-in,
+// so large sparse or well-conditioned systems converge in far less time and memory than a factorization
+// works on any LinearOperator: a Matrix, a SparseMatrix, or anything that can work out a row times a vector
+// CG is for symmetric positive definite matrices, GMRES and BICGSTAB work on any nonsingular matrix
+// (GMRES never lets the residual grow but keeps restart vectors, BICGSTAB keeps a fixed handful of vectors)
+// the matrix-vector products are split across GaussianElimination's pool once they are big enough
+public class IterativeSolver {
+
+    public enum Method { CG, GMRES, BICGSTAB }
+
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+    public static final int DEFAULT_MAX_ITERATIONS = 1000;
+    public static final int DEFAULT_RESTART = 30;
+
+    // called after every iteration with the residual relative to b, |b - Ax| / |b|
+    // for GMRES this is the estimate the method keeps as it goes, the others have the actual residual vector
+    public interface IterationListener {
+        void iteration(int iteration, double residual);
+    }
+
+    private final Method method;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private int restart = DEFAULT_RESTART;
+    private Preconditioner preconditioner;
+    private IterationListener listener;
+
+    public IterativeSolver(Method method) {
+        if (method == null) {
+            throw new IllegalArgumentException("A method must be given");
+        }
+        this.method = method;
+    }
+
+    // solves the augmented matrix [A | b], which must have one more column than it has rows
+    // A is multiplied in place through the matrix, nothing is copied or changed
+    public static Solution solveAugmented(Matrix augmented, Method method) {
+
+        int size = augmented.getRows();
+        if (size != augmented.getCols() - 1) {
+            throw new IllegalArgumentException("The coefficient part of the matrix must be square to solve it");
+        }
+
+        double[] b = new double[size];
+        for (int row = 0; row < size; row++) {
+            b[row] = augmented.get(row, size);
+        }
+
+        // the matrix without its last column
+        LinearOperator coefficients = new LinearOperator() {
+            public int getRows() {
+                return size;
+            }
+
+            public int getCols() {
+                return size;
+            }
+
+            public double multiplyRow(int row, double[] x) {
+                return augmented.multiplyRow(row, x);
+            }
+
+            public double getDiagonal(int row) {
+                return augmented.getDiagonal(row);
+            }
+        };
+
+        return new IterativeSolver(method).solve(coefficients, b);
+    }
+
+    // SETTINGS
+
+    public Method getMethod() {
+        return method;
+    }
+
+    // stops once |b - Ax| <= tolerance * |b|
+    public void setTolerance(double tolerance) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("The tolerance must be greater than 0");
+        }
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    // counts every matrix-vector product step, across restarts for GMRES
+    public void setMaxIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("There must be at least 1 iteration");
+        }
+        maxIterations = iterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    // how many vectors GMRES builds up before restarting from its current x, only used by GMRES
+    // more converges in fewer iterations but every iteration costs more, and it keeps 2 * restart vectors
+    public void setRestart(int restart) {
+        if (restart < 1) {
+            throw new IllegalArgumentException("GMRES must keep at least 1 vector before restarting");
+        }
+        this.restart = restart;
+    }
+
+    public int getRestart() {
+        return restart;
+    }
+
+    // null for no preconditioning, for CG it must be symmetric positive definite too (Jacobi on an SPD matrix is)
+    public void setPreconditioner(Preconditioner preconditioner) {
+        this.preconditioner = preconditioner;
+    }
+
+    public Preconditioner getPreconditioner() {
+        return preconditioner;
+    }
+
+    // null to stop reporting
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    public IterationListener getListener() {
+        return listener;
+    }
+
+    // solves Ax = b starting from x = 0
+    public Solution solve(LinearOperator a, double[] b) {
+        return solve(a, b, null);
+    }
+
+    // solves Ax = b starting from the guess x0 (which isn't changed), null to start from 0
+    // a good guess, like the solution of a nearby system, can save most of the iterations
+    public Solution solve(LinearOperator a, double[] b, double[] x0) {
+
+        int size = a.getRows();
+        if (a.getCols() != size) {
+            throw new IllegalArgumentException("Only a square matrix can be used to solve a system");
+        }
+        if (b.length != size) {
+            throw new IllegalArgumentException("The right hand side must have the same number of rows as the matrix");
+        }
+        if (x0 != null && x0.length != size) {
+            throw new IllegalArgumentException("The starting guess must have a value for each column");
+        }
+
+        SolverMetrics.OperationEvent event = SolverMetrics.beginOperation(
+                "iterativeSolve " + method, size, size);
+
+        double[] x = x0 == null ? new double[size] : x0.clone();
+        double bNorm = norm(b);
+        int iterations;
+        boolean converged;
+
+        if (bNorm == 0) {
+            Arrays.fill(x, 0);
+            iterations = 0;
+            converged = true;
+        } else {
+            Run run = new Run(a, b, x, tolerance * bNorm, bNorm);
+            switch (method) {
+                case CG:
+                    run.conjugateGradient();
+                    break;
+                case GMRES:
+                    run.gmres();
+                    break;
+                default:
+                    run.biCgStab();
+                    break;
+            }
+            iterations = run.iterations;
+            converged = run.converged;
+        }
+
+        // the recurrences drift from the true residual over many iterations, so report the real one
+        double[] r = new double[size];
+        residual(a, b, x, r);
+        double residual = bNorm == 0 ? norm(r) : norm(r) / bNorm;
+
+        SolverMetrics.endOperation(event);
+
+        return new Solution(x, iterations, residual, converged);
+    }
+
+    // the result of a solve
+    public static class Solution {
+
+        private final double[] x;
+        private final int iterations;
+        private final double residual;
+        private final boolean converged;
+
+        Solution(double[] x, int iterations, double residual, boolean converged) {
+            this.x = x;
+            this.iterations = iterations;
+            this.residual = residual;
+            this.converged = converged;
+        }
+
+        public double[] getX() {
+            return x;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        // |b - Ax| / |b| of the returned x (|b - Ax| when b is 0)
+        public double getResidual() {
+            return residual;
+        }
+
+        // whether the tolerance was reached, false when the iteration limit ran out or the method broke down
+        // (CG on a matrix that isn't positive definite, or a singular matrix), in which case x is the last iterate
+        public boolean isConverged() {
+            return converged;
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    // the state of one solve, so the solver itself can be reused, even from several threads
+    private final class Run {
+
+        private final LinearOperator a;
+        private final double[] b;
+        private final double[] x;
+        private final double target;
+        private final double bNorm;
+        private final int size;
+
+        private int iterations;
+        private boolean converged;
+
+        Run(LinearOperator a, double[] b, double[] x, double target, double bNorm) {
+            this.a = a;
+            this.b = b;
+            this.x = x;
+            this.target = target;
+            this.bNorm = bNorm;
+            this.size = b.length;
+        }
+
+        // preconditioned conjugate gradient
+        void conjugateGradient() {
+
+            double[] r = new double[size];
+            double[] z = new double[size];
+            double[] q = new double[size];
+
+            residual(a, b, x, r);
+            if (norm(r) <= target) {
+                converged = true;
+                return;
+            }
+
+            precondition(r, z);
+            double[] p = z.clone();
+            double rz = dot(r, z);
+
+            while (iterations < maxIterations) {
+                multiply(a, p, q);
+                double pq = dot(p, q);
+
+                // a direction with no positive curvature: the matrix isn't positive definite
+                if (!(pq > 0)) return;
+
+                double alpha = rz / pq;
+                for (int i = 0; i < size; i++) {
+                    x[i] += alpha * p[i];
+                    r[i] -= alpha * q[i];
+                }
+
+                double rNorm = norm(r);
+                report(++iterations, rNorm);
+                if (rNorm <= target) {
+                    converged = true;
+                    return;
+                }
+
+                precondition(r, z);
+                double rzNext = dot(r, z);
+                double beta = rzNext / rz;
+                for (int i = 0; i < size; i++) {
+                    p[i] = z[i] + beta * p[i];
+                }
+                rz = rzNext;
+            }
+        }
+
+        // BiCGSTAB with the preconditioner applied on the right, so the residual it tracks is the real one
+        void biCgStab() {
+
+            double[] r = new double[size];
+            residual(a, b, x, r);
+            if (norm(r) <= target) {
+                converged = true;
+                return;
+            }
+
+            double[] shadow = r.clone();
+            double[] p = new double[size];
+            double[] v = new double[size];
+            double[] preconditioned = new double[size];
+            double[] t = new double[size];
+            double rho = 1;
+            double alpha = 1;
+            double omega = 1;
+
+            while (iterations < maxIterations) {
+                double rhoNext = dot(shadow, r);
+                if (rhoNext == 0 || !Double.isFinite(rhoNext)) return; // breakdown
+
+                double beta = (rhoNext / rho) * (alpha / omega);
+                for (int i = 0; i < size; i++) {
+                    p[i] = r[i] + beta * (p[i] - omega * v[i]);
+                }
+                rho = rhoNext;
+
+                precondition(p, preconditioned);
+                multiply(a, preconditioned, v);
+                double shadowV = dot(shadow, v);
+                if (shadowV == 0) return;
+                alpha = rho / shadowV;
+
+                // r becomes s, the residual halfway through the step
+                for (int i = 0; i < size; i++) {
+                    x[i] += alpha * preconditioned[i];
+                    r[i] -= alpha * v[i];
+                }
+
+                double sNorm = norm(r);
+                if (sNorm <= target) {
+                    report(++iterations, sNorm);
+                    converged = true;
+                    return;
+                }
+
+                precondition(r, preconditioned);
+                multiply(a, preconditioned, t);
+                double tt = dot(t, t);
+                if (tt == 0) return;
+                omega = dot(t, r) / tt;
+
+                for (int i = 0; i < size; i++) {
+                    x[i] += omega * preconditioned[i];
+                    r[i] -= omega * t[i];
+                }
+
+                double rNorm = norm(r);
+                report(++iterations, rNorm);
+                if (rNorm <= target) {
+                    converged = true;
+                    return;
+                }
+                if (omega == 0) return; // stagnated
+            }
+        }
+
+        // restarted GMRES with the preconditioner on the right
+        // builds an orthonormal basis of the Krylov space with modified Gram-Schmidt, keeping the Hessenberg matrix
+        // triangular with Givens rotations as it grows, so the residual is known every iteration without solving
+        void gmres() {
+
+            int m = Math.min(restart, size);
+            double[][] basis = new double[m + 1][];
+            double[][] preconditionedBasis = new double[m][];
+            double[][] hessenberg = new double[m + 1][m];
+            double[] cosines = new double[m];
+            double[] sines = new double[m];
+            double[] g = new double[m + 1];
+            double[] y = new double[m];
+
+            double[] r = new double[size];
+
+            while (iterations < maxIterations) {
+                residual(a, b, x, r);
+                double beta = norm(r);
+                if (beta <= target) {
+                    converged = true;
+                    return;
+                }
+
+                if (basis[0] == null) basis[0] = new double[size];
+                for (int i = 0; i < size; i++) {
+                    basis[0][i] = r[i] / beta;
+                }
+                Arrays.fill(g, 0);
+                g[0] = beta;
+
+                int steps = 0;
+                boolean breakdown = false;
+                while (steps < m && iterations < maxIterations) {
+                    int j = steps;
+                    if (preconditionedBasis[j] == null) preconditionedBasis[j] = new double[size];
+                    if (basis[j + 1] == null) basis[j + 1] = new double[size];
+
+                    double[] w = basis[j + 1];
+                    precondition(basis[j], preconditionedBasis[j]);
+                    multiply(a, preconditionedBasis[j], w);
+
+                    for (int i = 0; i <= j; i++) {
+                        double h = dot(w, basis[i]);
+                        hessenberg[i][j] = h;
+                        double[] vector = basis[i];
+                        for (int k = 0; k < size; k++) {
+                            w[k] -= h * vector[k];
+                        }
+                    }
+                    double wNorm = norm(w);
+                    hessenberg[j + 1][j] = wNorm;
+
+                    // bring the new column in line with the earlier rotations, then zero its subdiagonal value
+                    for (int i = 0; i < j; i++) {
+                        double upper = hessenberg[i][j];
+                        double lower = hessenberg[i + 1][j];
+                        hessenberg[i][j] = cosines[i] * upper + sines[i] * lower;
+                        hessenberg[i + 1][j] = -sines[i] * upper + cosines[i] * lower;
+                    }
+                    double diagonal = hessenberg[j][j];
+                    double length = Math.hypot(diagonal, wNorm);
+                    if (length == 0) {
+                        // the new direction adds nothing, the matrix is singular on this Krylov space
+                        breakdown = true;
+                        break;
+                    }
+                    cosines[j] = diagonal / length;
+                    sines[j] = wNorm / length;
+                    hessenberg[j][j] = length;
+                    hessenberg[j + 1][j] = 0;
+                    g[j + 1] = -sines[j] * g[j];
+                    g[j] = cosines[j] * g[j];
+
+                    steps++;
+                    double estimate = Math.abs(g[j + 1]);
+                    report(++iterations, estimate);
+                    if (estimate <= target) {
+                        converged = true;
+                        break;
+                    }
+
+                    // the Krylov space stopped growing, so the solution in it is exact
+                    if (wNorm == 0) {
+                        converged = true;
+                        break;
+                    }
+                    for (int k = 0; k < size; k++) {
+                        w[k] /= wNorm;
+                    }
+                }
+
+                // x += (M^-1 V) y, where y solves the triangular system the rotations left behind
+                for (int i = steps - 1; i >= 0; i--) {
+                    double value = g[i];
+                    for (int k = i + 1; k < steps; k++) {
+                        value -= hessenberg[i][k] * y[k];
+                    }
+                    y[i] = value / hessenberg[i][i];
+                }
+                for (int i = 0; i < steps; i++) {
+                    double[] vector = preconditionedBasis[i];
+                    double scale = y[i];
+                    for (int k = 0; k < size; k++) {
+                        x[k] += scale * vector[k];
+                    }
+                }
+
+                if (converged || breakdown || steps == 0) return;
+            }
+        }
+
+        private void precondition(double[] r, double[] z) {
+            if (preconditioner == null) {
+                System.arraycopy(r, 0, z, 0, size);
+            } else {
+                preconditioner.apply(r, z);
+            }
+        }
+
+        private void report(int iteration, double residualNorm) {
+            if (listener != null) {
+                listener.iteration(iteration, residualNorm / bNorm);
+            }
+        }
+    }
+
+    // y = Ax, split across threads when there are enough rows
+    private static void multiply(LinearOperator a, double[] x, double[] y) {
+
+        GaussianElimination.forEachRow(0, y.length, a.getRowWork(), row -> y[row] = a.multiplyRow(row, x));
+
+        if (SolverMetrics.isEnabled()) {
+            SolverMetrics.count(SolverMetrics.Counter.FLOPS, 2L * y.length * a.getRowWork());
+        }
+    }
+
+    // r = b - Ax
+    private static void residual(LinearOperator a, double[] b, double[] x, double[] r) {
+        multiply(a, x, r);
+        for (int i = 0; i < r.length; i++) {
+            r[i] = b[i] - r[i];
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(double[] vector) {
+        return Math.sqrt(dot(vector, vector));
+    }
+}
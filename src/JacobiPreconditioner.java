@@ -0,0 +1,30 @@
+// M = the diagonal of A, the cheapest preconditioner there is
+// works well when the rows are badly scaled compared to each other, and on diagonally dominant systems
+public class JacobiPreconditioner implements Preconditioner {
+
+    private final double[] inverseDiagonal;
+
+    public JacobiPreconditioner(LinearOperator a) {
+
+        if (a.getRows() != a.getCols()) {
+            throw new IllegalArgumentException("Only a square matrix can be preconditioned");
+        }
+
+        inverseDiagonal = new double[a.getRows()];
+        for (int row = 0; row < inverseDiagonal.length; row++) {
+            double diagonal = a.getDiagonal(row);
+            if (diagonal == 0) {
+                throw new IllegalArgumentException("Row " + (row + 1) + " has a 0 on the diagonal, " +
+                        "so it can't be used as a Jacobi preconditioner");
+            }
+            inverseDiagonal[row] = 1 / diagonal;
+        }
+
+    }
+
+    public void apply(double[] r, double[] z) {
+        for (int i = 0; i < inverseDiagonal.length; i++) {
+            z[i] = r[i] * inverseDiagonal[i];
+        }
+    }
+}
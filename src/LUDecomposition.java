@@ -0,0 +1,553 @@
+import java.util.Arrays;
+
+public class LUDecomposition {
+
+    // number of columns factored together in one panel before the rest of the matrix is updated
+    // sized so a tile of the trailing update stays in cache, can be tuned with -Dmatrixsolver.blockSize=N
+    private static int defaultBlockSize = Integer.getInteger("matrixsolver.blockSize", 64);
+
+    // most rank one updates (see withRowUpdate) stacked on one factorization before it has to be factored again
+    // every update adds O(n) work to each solve, can be tuned with -Dmatrixsolver.maxUpdates=N
+    private static int maxUpdates = Integer.getInteger("matrixsolver.maxUpdates", 32);
+
+    // largest |change| * |w| / |1 + change . w| an update may have, past this the update would amplify
+    // rounding error too much and the matrix should be factored again instead
+    private static final double MAX_UPDATE_GROWTH = 1e8;
+
+    private final int ROWS;
+    private final int COLS;
+    private final int blockSize;
+
+    // combined storage for L (below the diagonal, unit diagonal implied) and U (on and above the diagonal)
+    private final double[][] lu;
+
+    // pivots[i] is the row of the original matrix that ended up in row i
+    private final int[] pivots;
+
+    // +1 or -1 depending on whether an even or odd number of row swaps were made
+    private int pivotSign;
+
+    private boolean singular;
+
+    // row changes made to the factored matrix since it was factored, oldest first
+    // the factors above are never changed, every solve applies these with the Sherman-Morrison formula
+    private final RowUpdate[] updates;
+
+    // factors a copy of the inputted matrix so the matrix itself is never changed
+    public LUDecomposition(Matrix m) {
+        this(m, defaultBlockSize);
+    }
+
+    public LUDecomposition(Matrix m, int blockSize) {
+        this(m, m.getCols(), blockSize);
+    }
+
+    // factors only the first cols columns of the matrix, used for the coefficient part of an augmented matrix
+    LUDecomposition(Matrix m, int cols, int blockSize) {
+        this(m.copyData(cols), cols, blockSize);
+    }
+
+    // factors values in place, so the caller must not use them afterwards
+    LUDecomposition(double[][] values, int cols, int blockSize) {
+
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1");
+        }
+
+        this.ROWS = values.length;
+        this.COLS = cols;
+        this.blockSize = blockSize;
+
+        lu = values;
+        pivots = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            pivots[i] = i;
+        }
+        pivotSign = 1;
+        updates = new RowUpdate[0];
+
+        factor();
+
+    }
+
+    // shares the factors of base, which are never changed once factored, with a different list of updates
+    private LUDecomposition(LUDecomposition base, RowUpdate[] updates) {
+
+        this.ROWS = base.ROWS;
+        this.COLS = base.COLS;
+        this.blockSize = base.blockSize;
+        this.lu = base.lu;
+        this.pivots = base.pivots;
+        this.pivotSign = base.pivotSign;
+        this.singular = base.singular;
+        this.updates = updates;
+
+    }
+
+    // SETTINGS
+
+    public static void setDefaultBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1");
+        }
+
+        defaultBlockSize = blockSize;
+    }
+
+    public static int getDefaultBlockSize() {
+        return defaultBlockSize;
+    }
+
+    public static void setMaxUpdates(int updates) {
+        if (updates < 0) {
+            throw new IllegalArgumentException("The number of updates cannot be negative");
+        }
+
+        maxUpdates = updates;
+    }
+
+    public static int getMaxUpdates() {
+        return maxUpdates;
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    // number of row changes applied with withRowUpdate since the matrix was last factored
+    public int getUpdateCount() {
+        return updates.length;
+    }
+
+    // whether a zero pivot (0, or within rounding error of 0 relative to the largest value, see pivotTolerance)
+    // was found during factoring
+    // factoring stops at the first zero pivot, so the factors are only complete when this is false
+    public boolean isSingular() {
+        return singular;
+    }
+
+    // product of the diagonal of U, with the sign flipped once for every row swap
+    public double determinant() {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find the determinant");
+        }
+
+        if (singular) return 0;
+
+        double det = pivotSign;
+        for (int i = 0; i < ROWS; i++) {
+            det *= lu[i][i];
+        }
+
+        // det(A + e_row change^T) = det(A) * (1 + change . A^-1 e_row)
+        for (RowUpdate update : updates) {
+            det *= update.denominator;
+        }
+
+        return det;
+
+    }
+
+    // solves Ax = b for x with forward and back substitution, O(n^2) per call
+    public double[] solve(double[] b) {
+
+        checkSolvable(b.length);
+
+        double[] x = substitute(b);
+        for (RowUpdate update : updates) {
+            update.apply(x);
+        }
+
+        return x;
+    }
+
+    // returns the factorization of the matrix with change added to one of its rows, without factoring again
+    // the new factorization shares the factors of this one and corrects every solve with a rank one update,
+    // so it only takes O(n^2) to create, this factorization is left unchanged
+    // returns null if the update isn't possible or would lose too much accuracy (the changed matrix being
+    // close to singular, or too many updates already stacked up), in which case the matrix should be factored again
+    public LUDecomposition withRowUpdate(int row, double[] change) {
+
+        if (change.length != COLS) {
+            throw new IllegalArgumentException("The change must be the same length as a row of the matrix");
+        }
+        if (row < 0 || row >= ROWS) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+        if (ROWS != COLS || singular || updates.length >= maxUpdates) {
+            return null;
+        }
+
+        double changeNorm = 0;
+        for (double value : change) {
+            changeNorm = Math.max(changeNorm, Math.abs(value));
+        }
+        if (changeNorm == 0) return this;
+
+        // w = A^-1 e_row, with the earlier updates already part of A
+        double[] unit = new double[ROWS];
+        unit[row] = 1;
+        double[] w = solve(unit);
+
+        double denominator = 1;
+        double wNorm = 0;
+        for (int i = 0; i < ROWS; i++) {
+            denominator += change[i] * w[i];
+            wNorm = Math.max(wNorm, Math.abs(w[i]));
+        }
+
+        // written so a NaN also counts as unstable
+        if (!(changeNorm * wNorm < MAX_UPDATE_GROWTH * Math.abs(denominator))) {
+            return null;
+        }
+
+        RowUpdate[] newUpdates = Arrays.copyOf(updates, updates.length + 1);
+        newUpdates[updates.length] = new RowUpdate(change.clone(), w, denominator);
+
+        return new LUDecomposition(this, newUpdates);
+    }
+
+    // solves AX = B where every column of B is a separate right hand side
+    // the substitution is done a whole row of right hand sides at a time, so B is only streamed through once
+    public Matrix solve(Matrix b) {
+
+        checkSolvable(b.getRows());
+
+        int rhsCount = b.getCols();
+        double[][] x = new double[ROWS][];
+        double[][] bValues = b.copyData();
+        for (int row = 0; row < ROWS; row++) {
+            x[row] = bValues[pivots[row]];
+        }
+
+        for (int row = 0; row < ROWS; row++) {
+            double[] rowArr = lu[row];
+            double[] xRow = x[row];
+            for (int k = 0; k < row; k++) {
+                double multiplier = rowArr[k];
+                if (multiplier != 0) {
+                    double[] xOther = x[k];
+                    for (int c = 0; c < rhsCount; c++) {
+                        xRow[c] -= multiplier * xOther[c];
+                    }
+                }
+            }
+        }
+
+        for (int row = ROWS - 1; row >= 0; row--) {
+            double[] rowArr = lu[row];
+            double[] xRow = x[row];
+            for (int k = row + 1; k < COLS; k++) {
+                double value = rowArr[k];
+                if (value != 0) {
+                    double[] xOther = x[k];
+                    for (int c = 0; c < rhsCount; c++) {
+                        xRow[c] -= value * xOther[c];
+                    }
+                }
+            }
+            double pivotValue = rowArr[row];
+            for (int c = 0; c < rhsCount; c++) {
+                xRow[c] /= pivotValue;
+            }
+        }
+
+        for (RowUpdate update : updates) {
+            update.apply(x);
+        }
+
+        Matrix solution = new Matrix(ROWS, rhsCount);
+        for (int row = 0; row < ROWS; row++) {
+            solution.setRow(row, x[row]);
+        }
+
+        return solution;
+    }
+
+    // writes U into data, which is an echelon form of the factored matrix
+    // only valid when the factorization is not singular, otherwise the pivots may not line up
+    void copyUpperInto(MatrixStorage data) {
+
+        if (singular) {
+            throw new IllegalStateException("A singular factorization does not have a complete echelon form");
+        }
+        if (updates.length > 0) {
+            throw new IllegalStateException("U does not include the row changes made since factoring");
+        }
+
+        double[] rowValues = new double[COLS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                double value = col < row ? 0 : lu[row][col];
+
+                // to eliminate floating point errors, but never on a pivot, which is known to be nonzero
+                rowValues[col] = col != row && Math.abs(value) < Matrix.PRECISION ? 0 : value;
+            }
+            data.setRow(row, rowValues);
+        }
+
+    }
+
+    // HELPER FUNCTIONS
+
+    // makes sure there is a unique solution to solve for, with right hand sides of the right length
+    private void checkSolvable(int rhsLength) {
+
+        if (ROWS != COLS) {
+            throw new IllegalStateException("Only a square matrix can be used to solve a system");
+        }
+        if (singular) {
+            throw new IllegalStateException("The matrix is singular, so the system does not have a unique solution");
+        }
+        if (rhsLength != ROWS) {
+            throw new IllegalArgumentException("The right hand side must have the same number of rows as the matrix");
+        }
+
+    }
+
+    // forward and back substitution with the factors, without the updates
+    private double[] substitute(double[] b) {
+
+        // apply the row swaps to b, then solve Ly = Pb
+        double[] x = new double[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            double value = b[pivots[row]];
+            double[] rowArr = lu[row];
+            for (int col = 0; col < row; col++) {
+                value -= rowArr[col] * x[col];
+            }
+            x[row] = value;
+        }
+
+        // solve Ux = y
+        for (int row = ROWS - 1; row >= 0; row--) {
+            double value = x[row];
+            double[] rowArr = lu[row];
+            for (int col = row + 1; col < COLS; col++) {
+                value -= rowArr[col] * x[col];
+            }
+            x[row] = value / rowArr[row];
+        }
+
+        return x;
+    }
+
+    // right-looking blocked factorization with partial pivoting, done in place on lu
+    // each panel of blockSize columns is factored on its own, then the trailing part of the matrix
+    // is updated in cache-sized tiles instead of streaming the whole trailing matrix once per pivot
+    private void factor() {
+
+        int steps = Math.min(ROWS, COLS);
+        double tolerance = pivotTolerance(lu, COLS);
+
+        for (int panelStart = 0; panelStart < steps; panelStart += blockSize) {
+
+            int panelEnd = Math.min(panelStart + blockSize, steps);
+
+            if (!factorPanel(panelStart, panelEnd, tolerance)) {
+                singular = true;
+                return;
+            }
+
+            solveUpperBlock(panelStart, panelEnd);
+            updateTrailing(panelStart, panelEnd);
+
+            if (SolverMetrics.isEnabled()) {
+                SolverMetrics.count(SolverMetrics.Counter.FLOPS, panelFlops(panelStart, panelEnd));
+            }
+        }
+    }
+
+    // largest a pivot can be and still only be rounding error, n * ulp(1) * the largest |value| in the first cols columns
+    // relative to the values so a small but well conditioned matrix (like 0.001 * I) isn't called singular,
+    // which an absolute cutoff like Matrix.PRECISION would do, 0 for a matrix of 0s so only an exact 0 counts
+    static double pivotTolerance(double[][] values, int cols) {
+
+        double largest = 0;
+        for (double[] rowArr : values) {
+            for (int col = 0; col < cols; col++) {
+                largest = Math.max(largest, Math.abs(rowArr[col]));
+            }
+        }
+
+        return Math.max(values.length, cols) * Math.ulp(1.0) * largest;
+    }
+
+    // number of floating point operations factoring a panel and updating the rest of the matrix takes
+    private long panelFlops(int panelStart, int panelEnd) {
+
+        long width = panelEnd - panelStart;
+        long flops = 0;
+        for (int col = panelStart; col < panelEnd; col++) {
+            long below = ROWS - col - 1;
+            flops += below + 2 * below * (panelEnd - col - 1); // multipliers, then the rest of the panel
+        }
+        flops += width * (width - 1) * (COLS - panelEnd); // U12
+        flops += 2 * (ROWS - panelEnd) * width * (COLS - panelEnd); // trailing update
+
+        return flops;
+    }
+
+    // factors columns panelStart to panelEnd, only updating values inside the panel
+    // returns false if a column without a usable pivot (one larger than tolerance) is found
+    private boolean factorPanel(int panelStart, int panelEnd, double tolerance) {
+
+        for (int col = panelStart; col < panelEnd; col++) {
+
+            // find the row with the largest value in this column to use as the pivot
+            // picking the largest keeps the multipliers <= 1 which limits floating point error growth
+            int pivotRow = col;
+            double pivotMagnitude = Math.abs(lu[col][col]);
+            for (int row = col + 1; row < ROWS; row++) {
+                double magnitude = Math.abs(lu[row][col]);
+                if (magnitude > pivotMagnitude) {
+                    pivotMagnitude = magnitude;
+                    pivotRow = row;
+                }
+            }
+
+            // the whole column is 0 so the determinant is 0, nothing left to do
+            if (pivotMagnitude <= tolerance) {
+                return false;
+            }
+
+            // swapping the row references moves the whole row, including columns outside the panel
+            if (pivotRow != col) {
+                double[] tempRow = lu[pivotRow];
+                lu[pivotRow] = lu[col];
+                lu[col] = tempRow;
+
+                int tempPivot = pivots[pivotRow];
+                pivots[pivotRow] = pivots[col];
+                pivots[col] = tempPivot;
+
+                pivotSign = -pivotSign;
+                SolverMetrics.count(SolverMetrics.Counter.ROW_SWAPS, 1);
+            }
+
+            // store the multipliers in place of the zeroed values and update the rest of the panel
+            double[] pivotRowArr = lu[col];
+            double pivotValue = pivotRowArr[col];
+            for (int row = col + 1; row < ROWS; row++) {
+                double[] rowArr = lu[row];
+                double multiplier = rowArr[col] / pivotValue;
+                rowArr[col] = multiplier;
+                if (multiplier != 0) {
+                    for (int c = col + 1; c < panelEnd; c++) {
+                        rowArr[c] -= multiplier * pivotRowArr[c];
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // turns the rows of the panel to the right of it into rows of U
+    // by solving with the unit lower triangle of the panel
+    private void solveUpperBlock(int panelStart, int panelEnd) {
+
+        for (int row = panelStart + 1; row < panelEnd; row++) {
+            double[] rowArr = lu[row];
+            for (int k = panelStart; k < row; k++) {
+                double multiplier = rowArr[k];
+                if (multiplier != 0) {
+                    double[] upperRow = lu[k];
+                    for (int c = panelEnd; c < COLS; c++) {
+                        rowArr[c] -= multiplier * upperRow[c];
+                    }
+                }
+            }
+        }
+    }
+
+    // subtracts L21 * U12 from the trailing part of the matrix one tile at a time,
+    // so the tile of U12 being used is reused by every row before moving on
+    private void updateTrailing(int panelStart, int panelEnd) {
+
+        for (int colStart = panelEnd; colStart < COLS; colStart += blockSize) {
+            int colEnd = Math.min(colStart + blockSize, COLS);
+
+            for (int rowStart = panelEnd; rowStart < ROWS; rowStart += blockSize) {
+                int rowEnd = Math.min(rowStart + blockSize, ROWS);
+
+                for (int row = rowStart; row < rowEnd; row++) {
+                    double[] rowArr = lu[row];
+                    for (int k = panelStart; k < panelEnd; k++) {
+                        double multiplier = rowArr[k];
+                        if (multiplier != 0) {
+                            double[] upperRow = lu[k];
+                            for (int c = colStart; c < colEnd; c++) {
+                                rowArr[c] -= multiplier * upperRow[c];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // a change added to one row of the matrix, A' = A + e_row change^T
+    private static class RowUpdate {
+
+        final double[] change;
+
+        // A^-1 e_row and 1 + change . A^-1 e_row, using A from before this update
+        final double[] w;
+        final double denominator;
+
+        RowUpdate(double[] change, double[] w, double denominator) {
+            this.change = change;
+            this.w = w;
+            this.denominator = denominator;
+        }
+
+        // turns x = A^-1 b into A'^-1 b (Sherman-Morrison)
+        void apply(double[] x) {
+
+            double dot = 0;
+            for (int i = 0; i < x.length; i++) {
+                dot += change[i] * x[i];
+            }
+
+            double scale = dot / denominator;
+            for (int i = 0; i < x.length; i++) {
+                x[i] -= w[i] * scale;
+            }
+
+        }
+
+        // the same for every column of the rows of x at once
+        void apply(double[][] x) {
+
+            int rhsCount = x.length == 0 ? 0 : x[0].length;
+            double[] dots = new double[rhsCount];
+            for (int i = 0; i < x.length; i++) {
+                if (change[i] != 0) {
+                    for (int c = 0; c < rhsCount; c++) {
+                        dots[c] += change[i] * x[i][c];
+                    }
+                }
+            }
+
+            for (int i = 0; i < x.length; i++) {
+                double scale = w[i] / denominator;
+                for (int c = 0; c < rhsCount; c++) {
+                    x[i][c] -= scale * dots[c];
+                }
+            }
+
+        }
+    }
+}
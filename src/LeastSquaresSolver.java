@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+// finds the x that minimizes |Ax - b| for an overdetermined system (more equations than unknowns),
+// the regression fit that elimination can only report as inconsistent
+// rows of the augmented matrix [A | B] are added in any number of calls, and each block of rows is folded into
+// a (cols x cols) upper triangular R with Householder reflections as soon as it fills, so memory only depends on
+// the number of columns and a matrix with millions of rows never has to be held at once
+// folding a block into R is the same as a QR decomposition of R stacked on top of the block, and an orthogonal
+// transformation doesn't change |Ax - b|, so the R of all the rows gives the same solution as QR of the whole matrix
+public class LeastSquaresSolver {
+
+    // the block of rows waiting to be folded in is sized to about this many bytes so it stays in cache
+    // while each reflection makes its two passes over it
+    private static final int BLOCK_BYTES = 1 << 18;
+
+    private final int UNKNOWNS;
+    private final int WIDTH;
+
+    // R of every row folded in so far, r[i] only uses columns i and up
+    private final double[][] r;
+
+    private final double[][] block;
+    private int blockRows;
+    private long rowCount;
+
+    // scratch space for the reflections, one value per column
+    private final double[] dots;
+
+    // every row has unknowns coefficients followed by rightHandSides values of B
+    public LeastSquaresSolver(int unknowns, int rightHandSides) {
+
+        if (unknowns < 1) {
+            throw new IllegalArgumentException("There must be at least 1 unknown to solve for");
+        }
+        if (rightHandSides < 1) {
+            throw new IllegalArgumentException("There must be at least 1 right hand side");
+        }
+
+        this.UNKNOWNS = unknowns;
+        this.WIDTH = unknowns + rightHandSides;
+
+        r = new double[WIDTH][WIDTH];
+        block = new double[Math.max(16, BLOCK_BYTES / (WIDTH * Double.BYTES))][];
+        dots = new double[WIDTH];
+
+    }
+
+    // solves an augmented matrix [A | b] with a single right hand side
+    public static Solution solve(Matrix augmented) {
+
+        if (augmented.getCols() < 2) {
+            throw new IllegalArgumentException("An augmented matrix needs at least 1 unknown and a right hand side");
+        }
+
+        LeastSquaresSolver solver = new LeastSquaresSolver(augmented.getCols() - 1, 1);
+        solver.addRows(augmented);
+        return solver.solve();
+    }
+
+    // solves the augmented matrix [A | b] in a text or binary file, streaming its rows (see MatrixLoader.forEachRow)
+    public static Solution solve(Path path) throws IOException {
+
+        LeastSquaresSolver[] solver = new LeastSquaresSolver[1];
+        MatrixLoader.forEachRow(path, row -> {
+            if (solver[0] == null) {
+                if (row.length < 2) {
+                    throw new IllegalArgumentException("Each row needs at least 1 coefficient and a right hand side");
+                }
+                solver[0] = new LeastSquaresSolver(row.length - 1, 1);
+            }
+            solver[0].addRow(row);
+        });
+
+        if (solver[0] == null) {
+            throw new IllegalArgumentException("The input does not contain any values");
+        }
+
+        return solver[0].solve();
+    }
+
+    // ACCESSORS
+
+    public int getUnknowns() {
+        return UNKNOWNS;
+    }
+
+    public int getRightHandSides() {
+        return WIDTH - UNKNOWNS;
+    }
+
+    // number of rows added so far
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    // solves for x with every row added so far, more rows can still be added afterwards
+    // throws if the columns of A are linearly dependent (including when there are fewer rows than unknowns),
+    // in which case there are many solutions with the same smallest residual
+    public Solution solve() {
+
+        foldBlock();
+
+        // R11 is close to singular when a diagonal value is tiny next to the largest one
+        double largest = 0;
+        for (int i = 0; i < UNKNOWNS; i++) {
+            largest = Math.max(largest, Math.abs(r[i][i]));
+        }
+        double tolerance = largest * UNKNOWNS * Math.ulp(1.0);
+        for (int i = 0; i < UNKNOWNS; i++) {
+            if (largest == 0 || Math.abs(r[i][i]) <= tolerance) {
+                throw new IllegalStateException("The columns are linearly dependent, " +
+                        "so there is no unique least squares solution");
+            }
+        }
+
+        int rhsCount = WIDTH - UNKNOWNS;
+        double[][] x = new double[rhsCount][UNKNOWNS];
+        double[] residuals = new double[rhsCount];
+
+        for (int rhs = 0; rhs < rhsCount; rhs++) {
+            int col = UNKNOWNS + rhs;
+
+            // R11 x = the part of Q^T b that A can reach
+            double[] solution = x[rhs];
+            for (int row = UNKNOWNS - 1; row >= 0; row--) {
+                double[] rowArr = r[row];
+                double value = rowArr[col];
+                for (int k = row + 1; k < UNKNOWNS; k++) {
+                    value -= rowArr[k] * solution[k];
+                }
+                solution[row] = value / rowArr[row];
+            }
+
+            // and the rest of Q^T b is what's left over
+            double sum = 0;
+            for (int row = UNKNOWNS; row <= col; row++) {
+                sum += r[row][col] * r[row][col];
+            }
+            residuals[rhs] = Math.sqrt(sum);
+        }
+
+        return new Solution(x, residuals, rowCount);
+    }
+
+    // MUTATORS
+
+    // adds one row of [A | B], which is copied
+    public void addRow(double[] row) {
+
+        if (row.length != WIDTH) {
+            throw new IllegalArgumentException("Each row must have " + WIDTH + " values, " +
+                    UNKNOWNS + " coefficients and " + (WIDTH - UNKNOWNS) + " right hand sides");
+        }
+
+        if (block[blockRows] == null) {
+            block[blockRows] = new double[WIDTH];
+        }
+        System.arraycopy(row, 0, block[blockRows], 0, WIDTH);
+        blockRows++;
+        rowCount++;
+
+        if (blockRows == block.length) {
+            foldBlock();
+        }
+    }
+
+    // adds every row of the matrix, which must have a column for each unknown and right hand side
+    public void addRows(Matrix m) {
+
+        if (m.getCols() != WIDTH) {
+            throw new IllegalArgumentException("The matrix must have " + WIDTH + " columns");
+        }
+
+        double[] rowValues = new double[WIDTH];
+        for (int row = 0; row < m.getRows(); row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                rowValues[col] = m.get(row, col);
+            }
+            addRow(rowValues);
+        }
+    }
+
+    // the result of a solve
+    public static class Solution {
+
+        private final double[][] x;
+        private final double[] residuals;
+        private final long rows;
+
+        Solution(double[][] x, double[] residuals, long rows) {
+            this.x = x;
+            this.residuals = residuals;
+            this.rows = rows;
+        }
+
+        // the solution for the first right hand side
+        public double[] getX() {
+            return x[0];
+        }
+
+        public double[] getX(int rightHandSide) {
+            return x[rightHandSide];
+        }
+
+        // |Ax - b| for the first right hand side, 0 when the system is consistent
+        public double getResidual() {
+            return residuals[0];
+        }
+
+        public double getResidual(int rightHandSide) {
+            return residuals[rightHandSide];
+        }
+
+        // number of rows (equations) the solution was fit to
+        public long getRows() {
+            return rows;
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    // replaces R with the R of R stacked on the waiting rows, then empties the block
+    // for each column a reflection zeroes the column in the block, using R's diagonal as the pivot,
+    // and R's zeros below the diagonal mean no other row of R is touched
+    private void foldBlock() {
+
+        if (blockRows == 0) return;
+
+        for (int col = 0; col < WIDTH; col++) {
+
+            double[] pivotRow = r[col];
+            double diagonal = pivotRow[col];
+            double sumOfSquares = 0;
+            for (int row = 0; row < blockRows; row++) {
+                double value = block[row][col];
+                sumOfSquares += value * value;
+            }
+            if (sumOfSquares == 0) continue; // already zero below the diagonal
+
+            // reflect onto -sign(diagonal) * norm, so v's first entry never cancels
+            double norm = Math.sqrt(diagonal * diagonal + sumOfSquares);
+            double alpha = diagonal > 0 ? -norm : norm;
+            double head = diagonal - alpha; // v = [head, column of the block]
+            double beta = 2 / (head * head + sumOfSquares);
+
+            // dots = v^T [R row; block] for the columns right of this one, a row at a time
+            int rest = col + 1;
+            int width = WIDTH - rest;
+            for (int c = rest; c < WIDTH; c++) {
+                dots[c] = head * pivotRow[c];
+            }
+            for (int row = 0; row < blockRows; row++) {
+                double[] rowArr = block[row];
+                double value = rowArr[col];
+                if (value != 0) {
+                    for (int c = rest; c < WIDTH; c++) {
+                        dots[c] += value * rowArr[c];
+                    }
+                }
+            }
+
+            // subtract beta v dots^T
+            for (int c = rest; c < WIDTH; c++) {
+                dots[c] *= beta;
+                pivotRow[c] -= head * dots[c];
+            }
+            for (int row = 0; row < blockRows; row++) {
+                double[] rowArr = block[row];
+                double value = rowArr[col];
+                if (value != 0) {
+                    for (int c = rest; c < WIDTH; c++) {
+                        rowArr[c] -= value * dots[c];
+                    }
+                    rowArr[col] = 0;
+                }
+            }
+
+            pivotRow[col] = alpha;
+
+            if (SolverMetrics.isEnabled()) {
+                SolverMetrics.count(SolverMetrics.Counter.FLOPS, 4L * (blockRows + 1) * (width + 1));
+            }
+        }
+
+        blockRows = 0;
+    }
+}
@@ -0,0 +1,23 @@
+// anything that can be multiplied by a vector, which is all IterativeSolver needs from a matrix
+// Matrix and SparseMatrix are both linear operators, and so can any other compact representation
+// (a stencil, a matrix that is never stored at all) by working out each row's product itself
+// rows are multiplied independently, and possibly from several threads at once, so multiplyRow must not change
+// anything shared
+public interface LinearOperator {
+
+    int getRows();
+
+    int getCols();
+
+    // the row of the operator times x, where x has a value for each column
+    double multiplyRow(int row, double[] x);
+
+    // the value on the diagonal of the row, used by the Jacobi preconditioner
+    double getDiagonal(int row);
+
+    // about how many multiplications multiplyRow does, used to decide when splitting a product across threads
+    // is worth it
+    default int getRowWork() {
+        return getCols();
+    }
+}
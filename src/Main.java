@@ -1,10 +1,32 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class Main {
 
+    // matrices with more rows or columns than this are only shown as a preview of their corners
+    private static final int FULL_DISPLAY_LIMIT = 50;
+    private static final int PREVIEW_EDGE = 5;
+
+    // how many matrices batch mode reads ahead of its output per thread
+    private static final int PENDING_PER_THREAD = 64;
+
     public static void main(String[] args) {
 
+        // java Main --batch [file] [--threads n] solves a stream of matrices without any prompts
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(runBatch(args));
+        }
+
+        // java Main --fit file finds the least squares solution of a system too large to load, a row at a time
+        if (args.length > 0 && args[0].equals("--fit")) {
+            System.exit(runFit(args));
+        }
+
         Matrix m = null;
         int rows;
         int cols;
@@ -15,14 +37,22 @@ public class Main {
         System.out.println("Welcome, this is a program that can put an augmented matrix into echelon or reduced echelon form\n" +
                 "Or calculate the determinant of a coefficient matrix");
 
+        // a file can be passed in to start with that matrix already loaded
+        if (args.length > 0) {
+            m = loadMatrix(Paths.get(args[0]));
+        }
+
         mainLoop:
         while (true) {
 
             System.out.println("Please enter a command:" +
                     "\n\tInput a matrix (I)" +
+                    "\n\tLoad a matrix from a text, Matrix Market (.mtx) or binary (.msb) file (F)" +
                     "\n\tConvert inputted matrix into echelon form (E)" +
                     "\n\tConvert inputted matrix into reduced echelon form (R)" +
                     "\n\tCalculate the determinant of the matrix (D)" +
+                    "\n\tFind the least squares solution of an overdetermined system (L)" +
+                    "\n\tSolve a square system with float factors refined to double accuracy (S)" +
                     "\n\tQuit the program (Q)");
 
             command = console.nextLine().toUpperCase();
@@ -123,19 +153,28 @@ public class Main {
                     System.out.println();
                     System.out.println(m);
 
+                    break;
+                case "F":
+                    System.out.print("File path: ");
+                    Matrix loaded = loadMatrix(Paths.get(console.nextLine().trim()));
+                    if (loaded != null) {
+                        m = loaded;
+                    }
                     break;
                 case "E":
                     if (m != null) {
-                        m.echelonForm();
-                        System.out.println(m.toString(true));
+                        Matrix result = m.copy(); // so later commands still work on the inputted matrix
+                        result.echelonForm();
+                        System.out.println(display(result, true));
                     } else {
                         System.out.println("Must input a matrix first\n");
                     }
                     break;
                 case "R":
                     if (m != null) {
-                        m.reducedEchelonForm();
-                        System.out.println(m.toString(true));
+                        Matrix result = m.copy(); // so later commands still work on the inputted matrix
+                        result.reducedEchelonForm();
+                        System.out.println(display(result, true));
                     } else {
                         System.out.println("Must input a matrix first\n");
                     }
@@ -148,6 +187,28 @@ public class Main {
                         System.out.println("Must input a matrix first\n");
                     }
                     break;
+                case "L":
+                    if (m != null) {
+                        try {
+                            System.out.println(describe(m.leastSquares()));
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            System.out.println("Could not find the least squares solution: " + e.getMessage() + "\n");
+                        }
+                    } else {
+                        System.out.println("Must input a matrix first\n");
+                    }
+                    break;
+                case "S":
+                    if (m != null) {
+                        try {
+                            System.out.println(describe(m.solveMixedPrecision()));
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            System.out.println("Could not solve the system: " + e.getMessage() + "\n");
+                        }
+                    } else {
+                        System.out.println("Must input a matrix first\n");
+                    }
+                    break;
                 case "Q":
                     System.out.println("Goodbye");
                     console.close();
@@ -158,4 +219,114 @@ public class Main {
             }
         }
     }
-}
+
+    // runs batch mode, reading from the file given or standard input and writing to standard output
+    // returns the exit code
+    private static int runBatch(String[] args) {
+
+        Path path = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (path == null) {
+                    path = Paths.get(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+
+            BatchSolver solver = new BatchSolver(threads, threads * PENDING_PER_THREAD);
+            long start = System.nanoTime();
+            long solved;
+            try (InputStream in = path == null ? System.in : Files.newInputStream(path)) {
+                solved = solver.run(in, System.out);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            // the report goes to standard error so it doesn't mix with the results
+            System.err.printf("Solved %d matrices in %.3f seconds (%.1f matrices/sec) on %d threads%n",
+                    solved, seconds, solved / seconds, threads);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Could not solve the matrices: " + e.getMessage());
+        } catch (IllegalArgumentException e) { // also catches NumberFormatException
+            System.err.println("Invalid input: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    // runs --fit, streaming the rows of the file given through LeastSquaresSolver and printing the solution
+    // returns the exit code
+    private static int runFit(String[] args) {
+
+        if (args.length != 2) {
+            System.err.println("Usage: java Main --fit file");
+            return 1;
+        }
+
+        try {
+            long start = System.nanoTime();
+            LeastSquaresSolver.Solution solution = LeastSquaresSolver.solve(Paths.get(args[1]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(describe(solution));
+            System.err.printf("Fit %d rows in %.3f seconds (%.1f rows/sec)%n",
+                    solution.getRows(), seconds, solution.getRows() / seconds);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Could not read " + args[1] + ": " + e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println("Could not find the least squares solution: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    // lists each unknown of a least squares solution and how far off the fit is
+    private static String describe(LeastSquaresSolver.Solution solution) {
+        StringBuilder builder = new StringBuilder();
+        double[] x = solution.getX();
+        for (int i = 0; i < x.length; i++) {
+            builder.append("x").append(i + 1).append(" = ").append(x[i]).append('\n');
+        }
+        return builder.append("Residual |Ax - b| = ").append(solution.getResidual()).append('\n').toString();
+    }
+
+    // lists each unknown of a mixed precision solution and how it was found
+    private static String describe(MixedPrecisionSolver.Solution solution) {
+        StringBuilder builder = new StringBuilder();
+        double[] x = solution.getX();
+        for (int i = 0; i < x.length; i++) {
+            builder.append("x").append(i + 1).append(" = ").append(x[i]).append('\n');
+        }
+        builder.append(solution.isFallback() ? "Solved in double precision after " : "Refined in ")
+                .append(solution.getIterations()).append(" iterations\n");
+        return builder.append("Backward error = ").append(solution.getResidual()).append('\n').toString();
+    }
+
+    // reads a matrix from a file and prints it
+    // returns null, after printing why, if the file couldn't be read
+    private static Matrix loadMatrix(Path path) {
+        try {
+            Matrix loaded = MatrixLoader.read(path, Matrix.StorageMode.FLAT);
+            System.out.println();
+            System.out.println(display(loaded, false));
+            return loaded;
+        } catch (IOException e) {
+            System.out.println("Could not read " + path + ": " + e.getMessage() + "\n");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid matrix file: " + e.getMessage() + "\n");
+        }
+        return null;
+    }
+
+    // returns the matrix as a String, or a preview of it if it is too large to be readable in full
+    private static String display(Matrix m, boolean augmented) {
+        if (m.getRows() > FULL_DISPLAY_LIMIT || m.getCols() > FULL_DISPLAY_LIMIT) {
+            return m.toPreviewString(augmented, PREVIEW_EDGE);
+        }
+        return m.toString(augmented);
+    }
+}
\ No newline at end of file
@@ -1,29 +1,79 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.function.UnaryOperator;
 
-public class Matrix {
+public class Matrix implements LinearOperator {
+
+    // how the values of the matrix are laid out in memory
+    // NESTED keeps every row as its own array, FLAT keeps all values in one contiguous array,
+    // OFF_HEAP keeps them in native memory outside of the Java heap (see OffHeapStorage)
+    public enum StorageMode { NESTED, FLAT, OFF_HEAP }
 
     private final int ROWS;
     private final int COLS;
 
     public static final double PRECISION = 0.00001;
 
-    private double[][] data;
+    // smallest matrix (in both dimensions) that echelonForm hands to the blocked LU kernel
+    // smaller matrices fit in cache anyway, so the row by row elimination is just as fast
+    private static final int BLOCKED_MIN_SIZE = 256;
+
+    private final MatrixStorage data;
+
+    // immutable matrices (see immutableCopy, subMatrix and minor) throw from every method that would change them
+    private final boolean immutable;
+
+    // when true, matrices that only contain integers are eliminated exactly with BareissElimination
+    private boolean exactMode;
 
     // for storing the toString value and only recalculating it when necessary
     private String asString;
+    private boolean asStringAugmented;
     private boolean dataChanged;
 
+    // incremented by every change to the data, the cached results below are only used
+    // while cachedVersion still matches it
+    private long version;
+    private long cachedVersion;
+    private LUDecomposition cachedFactorization;
+    private LUDecomposition cachedCoefficientFactorization;
+    private SymmetricDecomposition cachedSymmetricFactorization;
+    private double cachedDeterminant;
+    private boolean hasCachedDeterminant;
+    private int cachedRank;
+    private double[][] cachedReducedForm;
+    private StructureAnalysis cachedStructure;
+    private Matrix cachedImmutableCopy;
+
     public Matrix(int rows, int cols) {
+        this(rows, cols, StorageMode.NESTED);
+    }
 
-        if (rows < 0 || cols < 0) throw new IllegalArgumentException("The matrix cannot have a dimension of 0");
+    public Matrix(int rows, int cols, StorageMode mode) {
+        this(createStorage(rows, cols, mode));
+    }
 
-        this.ROWS = rows;
-        this.COLS = cols;
+    public Matrix(MatrixStorage storage) {
+        this(storage, false);
+    }
 
-        data = new double[ROWS][COLS];
+    private Matrix(MatrixStorage storage, boolean immutable) {
+
+        if (storage.getRows() < 0 || storage.getCols() < 0) {
+            throw new IllegalArgumentException("The matrix cannot have a dimension of 0");
+        }
+
+        this.ROWS = storage.getRows();
+        this.COLS = storage.getCols();
+
+        data = storage;
+        this.immutable = immutable;
 
         dataChanged = true;
+        cachedVersion = -1;
 
     }
 
@@ -36,8 +86,42 @@ public class Matrix {
             throw new IllegalArgumentException("Inputted location out of bounds");
         }
 
-        return data[row][col];
+        return data.get(row, col);
+
+    }
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    // the first x.length values of the row times x, so the coefficient part of an augmented matrix
+    // can be multiplied by leaving off the last column
+    public double multiplyRow(int row, double[] x) {
+
+        if (!validRow(row)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+        if (x.length > COLS) {
+            throw new IllegalArgumentException("The vector has more values than the matrix has columns");
+        }
+
+        return data.dotRow(row, x, x.length);
+    }
+
+    public double getDiagonal(int row) {
+        return get(row, row);
+    }
 
+    public boolean isExactMode() {
+        return exactMode;
+    }
+
+    public boolean isImmutable() {
+        return immutable;
     }
 
     // returns what column the leading coefficient is in of that row
@@ -49,7 +133,7 @@ public class Matrix {
 
         for (int col = 0; col < COLS; col++) {
 
-            if (data[row][col] != 0) return col;
+            if (data.get(row, col) != 0) return col;
 
         }
 
@@ -62,49 +146,87 @@ public class Matrix {
     // sets value at specified location in the matrix
     public void set(int row, int col, double value) {
 
+        checkMutable();
+
         if (!validRow(row) || !validCol(col)) {
             throw new IllegalArgumentException("Inputted location out of bounds");
         }
 
-        data[row][col] = value;
+        boolean update = canUpdateFactorizations();
+        double change = value - data.get(row, col);
 
-        dataChanged = true;
+        data.set(row, col, value);
+
+        markChanged();
+
+        if (update) {
+            double[] rowChange = new double[COLS];
+            rowChange[col] = change;
+            updateFactorizations(row, rowChange);
+        }
 
     }
 
     // sets an entire row in the matrix
     public void setRow(int row, double[] values) {
 
+        checkMutable();
+
         if (values.length != COLS) {
             throw new IllegalArgumentException("The inputted values do not match the length of the matrix");
         } else if (!validRow(row)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
 
-        data[row] = Arrays.copyOf(values, COLS);
+        double[] rowChange = null;
+        if (canUpdateFactorizations()) {
+            rowChange = new double[COLS];
+            data.copyRow(row, rowChange);
+            for (int col = 0; col < COLS; col++) {
+                rowChange[col] = values[col] - rowChange[col];
+            }
+        }
 
-        dataChanged = true;
+        data.setRow(row, values);
+
+        markChanged();
+
+        if (rowChange != null) {
+            updateFactorizations(row, rowChange);
+        }
 
     }
 
+    // turns exact mode on or off, in exact mode echelonForm and determinant use fraction-free
+    // integer elimination whenever every value in the matrix is an integer
+    public void setExactMode(boolean exactMode) {
+        if (exactMode != this.exactMode) {
+            this.exactMode = exactMode;
+            cachedVersion = -1; // the cached results were calculated the other way
+        }
+    }
+
     // swaps the location of 2 rows
     public void swapRows(int row1, int row2) {
 
+        checkMutable();
+
         if (!validRow(row1) || !validRow(row2)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
 
-        double[] temp = data[row1];
-        data[row1] = data[row2];
-        data[row2] = temp;
+        data.swapRows(row1, row2);
 
-        dataChanged = true;
+        markChanged();
 
     }
 
     // sorts the rows so that all zero rows are on the bottom and leading entries go down and right
     public void sortRows() {
+        checkMutable();
+        long start = SolverMetrics.startPhase();
         sortRows(1);
+        SolverMetrics.endPhase(SolverMetrics.Phase.SORT_ROWS, start);
     }
 
     // sorts the rows so the zero rows are on the bottom and leading entries go down and right
@@ -112,55 +234,49 @@ public class Matrix {
     // but row operations may cause lower potions to no longer be sorted
     private void sortRows(int startingRow) {
 
-        // map each row to how many leading 0s it has so as not to
+        // store how many leading 0s each row has so as not to
         // recalculate every time, which takes a lot of computation
+        // the counts are swapped along with the rows so they stay lined up
 
-        HashMap<double[], Integer> leadingZeros = new HashMap<>();
-        double[] rowArr;
+        int[] leadingZeros = new int[ROWS];
         int leadingZerosForRow;
 
         for (int row = 0; row < ROWS; row++) {
 
-            rowArr = data[row];
             leadingZerosForRow = getPivotCol(row);
             if (leadingZerosForRow == -1) { // full zero row
                 leadingZerosForRow = COLS;
             }
 
-            leadingZeros.put(rowArr, leadingZerosForRow);
+            leadingZeros[row] = leadingZerosForRow;
 
         }
 
         // use an insertion sort algorithm to sort them by least
         // to greatest number of 0s before the leading coefficient
 
-        double[] lowerRow;
-        double[] upperRow;
         int lowerLeadingZeroes;
 
         // go through each row top to bottom, skipping the first one because that is
         // already assumed to be in the "sorted" section of the matrix
         for (int row = startingRow; row < ROWS; row++) {
 
-            // get row we are trying to insert into sorted upper
-            // portion and calculate how many leading zeroes it has
-            lowerRow = data[row];
-            lowerLeadingZeroes = leadingZeros.get(lowerRow);
+            // get the number of leading zeroes of the row we are
+            // trying to insert into sorted upper portion
+            lowerLeadingZeroes = leadingZeros[row];
 
             // loop through every row bottom to top, starting at the current one
             // and continue to move that row up as long as it has less leading zeroes
             // than the one above it
             for (int i = row; i > 0; i--) {
 
-                // row currently directly above the current row we are trying to place
-                upperRow = data[i - 1];
-
-                if (lowerLeadingZeroes < leadingZeros.get(upperRow)) {
+                if (lowerLeadingZeroes < leadingZeros[i - 1]) {
                     // swap rows
-                    data[i] = upperRow;
-                    data[i - 1] = lowerRow;
+                    data.swapRows(i, i - 1);
+                    leadingZeros[i] = leadingZeros[i - 1];
+                    leadingZeros[i - 1] = lowerLeadingZeroes;
 
-                    dataChanged = true;
+                    markChanged();
                 } else {
                     break;
                 }
@@ -170,26 +286,19 @@ public class Matrix {
 
     // multiplies an entire row by a scalar
     public void scaleRow(int row, double scalar) {
+        checkMutable();
         if (!validRow(row)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
 
-        for (int col = 0; col < COLS; col++) {
+        data.scaleRow(row, scalar);
 
-            data[row][col] = data[row][col] * scalar;
-
-            // to eliminate floating point errors
-            if (Math.abs(data[row][col]) < PRECISION) {
-                data[row][col] = 0;
-            }
-
-        }
-
-        dataChanged = true;
+        markChanged();
     }
 
     // scales the inputted row so that the leading coefficient = 1
     public void normalizeRow(int row) {
+        checkMutable();
         if (!validRow(row)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
@@ -205,31 +314,24 @@ public class Matrix {
             }
         }
 
-        dataChanged = true;
+        markChanged();
     }
 
     // adds row1 times scalar to row2
     public void addRows(int row1, int row2, double scalar) {
+        checkMutable();
         if (!validRow(row1) || !validRow(row2)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
 
-        for (int col = 0; col < COLS; col++) {
-
-            data[row2][col] += data[row1][col] * scalar;
-
-            // to eliminate floating point errors
-            if (Math.abs(data[row2][col]) < PRECISION) {
-                data[row2][col] = 0;
-            }
+        data.addRows(row1, row2, scalar);
 
-        }
-
-        dataChanged = true;
+        markChanged();
     }
 
     // adds row1 to row2 a number of times so row2 has a value of 0 in the pivot column of row1
     public void zeroOtherRowInPivotColumn(int row1, int row2) {
+        checkMutable();
         if (!validRow(row1) || !validRow(row2)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
@@ -245,16 +347,17 @@ public class Matrix {
 
                 // gets rid of those pesky values like 2 * 10^-14 that
                 // should be zero, but aren't due to floating point error
-                data[row2][pivotCol] = 0;
+                data.set(row2, pivotCol, 0);
 
             }
         }
 
-        dataChanged = true;
+        markChanged();
     }
 
     // makes all 0s in rows below the inputted row within that row's pivot column
     public void zeroBelowPivotCols(int startingRow) {
+        checkMutable();
         if (!validRow(startingRow)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
@@ -266,12 +369,13 @@ public class Matrix {
 
         }
 
-        dataChanged = true;
+        markChanged();
 
     }
 
     // makes all 0s in rows above the inputted row within that row's pivot column
     public void zeroAbovePivotCols(int startingRow) {
+        checkMutable();
         if (!validRow(startingRow)) {
             throw new IllegalArgumentException("Inputted row out of bounds");
         }
@@ -283,220 +387,690 @@ public class Matrix {
 
         }
 
-        dataChanged = true;
+        markChanged();
 
     }
 
     // puts the matrix into echelon form
+    // uses partial pivoting, so the row with the largest value in each pivot column is picked as the pivot
     public void echelonForm() {
-        sortRows();
-        for (int row = 0; row < ROWS - 1; row++) {
-            zeroBelowPivotCols(row);
-            sortRows(row + 1); // to make sure matrix rows become unsorted after row operations
+
+        checkMutable();
+
+        SolverMetrics.OperationEvent event = SolverMetrics.beginOperation("echelonForm", ROWS, COLS);
+        long start = SolverMetrics.startPhase();
+
+        eliminate(event);
+
+        SolverMetrics.endPhase(SolverMetrics.Phase.ELIMINATION, start);
+        SolverMetrics.endOperation(event);
+    }
+
+    // does the work of echelonForm, picking the way of eliminating that suits the matrix
+    private void eliminate(SolverMetrics.OperationEvent event) {
+
+        if (exactMode && BareissElimination.isIntegerMatrix(this)) {
+            new BareissElimination(this).copyInto(data);
+            markChanged();
+            return;
         }
-        dataChanged = true;
+
+        // upper triangular matrices are already done, and banded ones only need the values in their band eliminated
+        StructureAnalysis structure = structure();
+        SolverMetrics.describeStructure(event, structure);
+        if (structure.isEchelonForm()) {
+            return;
+        }
+        if (structure.getStructure() == StructureAnalysis.Structure.BANDED) {
+            BandedLUDecomposition lu = new BandedLUDecomposition(data,
+                    structure.getLowerBandwidth(), structure.getUpperBandwidth(), true);
+            if (!lu.isSingular()) {
+                lu.copyEchelonFormInto(data);
+                markChanged();
+                return;
+            }
+        }
+
+        // large matrices with a pivot in every step can use U from the blocked LU factorization,
+        // anything else (small or rank deficient) goes through the row by row elimination
+        // the factorization is kept on the heap, so off heap matrices are always eliminated in place
+        if (Math.min(ROWS, COLS) >= BLOCKED_MIN_SIZE && !(data instanceof OffHeapStorage)) {
+            LUDecomposition lu = ROWS == COLS ? factorization() : new LUDecomposition(this);
+            if (lu.getUpdateCount() > 0) { // an updated factorization has no U of its own
+                lu = new LUDecomposition(this);
+            }
+            if (!lu.isSingular()) {
+                lu.copyUpperInto(data);
+                markChanged();
+                return;
+            }
+        }
+
+        GaussianElimination.echelonForm(data);
+        markChanged();
+    }
+
+    // puts the matrix into echelon form while keeping it in tiles on disk in directory (see OutOfCoreElimination),
+    // for matrices too large to eliminate in memory
+    // if it is interrupted, calling it again on the same matrix resumes from the last completed step
+    public void echelonFormOutOfCore(Path directory) throws IOException {
+
+        checkMutable();
+
+        SolverMetrics.OperationEvent event = SolverMetrics.beginOperation("echelonForm", ROWS, COLS);
+        long start = SolverMetrics.startPhase();
+
+        // the working files are only deleted once finished, so a failed call can be resumed
+        OutOfCoreElimination elimination = new OutOfCoreElimination(this, directory);
+        MatrixStorage result;
+        try {
+            // columns without a pivot are skipped on disk too, so this is an echelon form even when singular
+            // it is read into separate storage first, so an IOException part way through leaves this matrix
+            // as it was and the call can still be resumed
+            result = createStorage(ROWS, COLS, storageMode(data));
+            elimination.copyUpperInto(result);
+        } catch (IOException | RuntimeException e) {
+            elimination.close();
+            throw e;
+        }
+        elimination.delete();
+
+        // straight into the storage, the factorizations are dropped by markChanged rather than updated a row at a time
+        double[] values = new double[COLS];
+        for (int row = 0; row < ROWS; row++) {
+            result.copyRow(row, values);
+            data.setRow(row, values);
+        }
+        markChanged();
+
+        SolverMetrics.endPhase(SolverMetrics.Phase.ELIMINATION, start);
+        SolverMetrics.endOperation(event);
     }
 
     // puts the matrix into reduced echelon form
+    // if the reduced form of the current data was already calculated (by rank() or a previous call
+    // on the same data) it is copied in instead of eliminating again
     public void reducedEchelonForm() {
-        echelonForm();
-        normalizeRow(0);
-        for (int row = ROWS - 1; row > 0; row--) {
-            zeroAbovePivotCols(row);
-            normalizeRow(row);
+
+        checkMutable();
+
+        SolverMetrics.OperationEvent event = SolverMetrics.beginOperation("reducedEchelonForm", ROWS, COLS);
+
+        double[][] reducedForm = validCache() ? cachedReducedForm : null;
+        if (reducedForm == null) {
+            reducedForm = reducedFormFromFactorization();
         }
-        dataChanged = true;
+        if (reducedForm == null) {
+            reducedForm = reducedFormFromStructure(event);
+        }
+
+        if (reducedForm != null) {
+            for (int row = 0; row < ROWS; row++) {
+                data.setRow(row, reducedForm[row]);
+            }
+            markChanged();
+        } else {
+            echelonForm();
+            long start = SolverMetrics.startPhase();
+            GaussianElimination.backSubstitute(data);
+            SolverMetrics.endPhase(SolverMetrics.Phase.BACK_SUBSTITUTION, start);
+            markChanged();
+            reducedForm = copyData();
+        }
+
+        // the reduced echelon form of a matrix in reduced echelon form is itself
+        validCache();
+        cachedReducedForm = reducedForm;
+        cachedRank = countNonZeroRows(reducedForm);
+
+        SolverMetrics.endOperation(event);
     }
 
-    // calculates the determinant of the matrix by calling the recursive function
+    // calculates the determinant of the matrix from its LU decomposition
+    // the decomposition works on a copy, so this matrix is left unchanged
+    // the result is kept until the data changes
     public double determinant() {
 
         if (ROWS != COLS) {
             throw new IllegalArgumentException("Matrix must be square to find the determinant");
         }
 
-        // base case: m is a 2 x 2 matrix
-        // (don't need to check column because we already know it is square)
-        if (ROWS == 2) {
-            // | a b |
-            // | c d |
-            // a 2 x 2 matrix as shown has a determinant ad - bc
-            return get(0, 0) * get(1, 1) - get(0, 1) * get(1, 0);
+        SolverMetrics.OperationEvent event = SolverMetrics.beginOperation("determinant", ROWS, COLS);
+
+        if (!validCache() || !hasCachedDeterminant) {
+            long start = SolverMetrics.startPhase();
+            if (exactMode && BareissElimination.isIntegerMatrix(this)) {
+                cachedDeterminant = new BareissElimination(this).determinant().doubleValue();
+            } else if (cachedFactorization != null) {
+                cachedDeterminant = cachedFactorization.determinant();
+            } else {
+                cachedDeterminant = structuredDeterminant(event);
+            }
+            hasCachedDeterminant = true;
+            SolverMetrics.endPhase(SolverMetrics.Phase.ELIMINATION, start);
         }
 
-        // variables for upcoming loop:
-        int plusMinus = 1;
-        double sum = 0.0;
-        int row = 0;
-        Matrix excludedRowColMatrix;
-        double excludedRowColDeterminant;
+        SolverMetrics.endOperation(event);
+        return cachedDeterminant;
+    }
 
-        // loop through each value in the first row
-        // multiply by that value times the determinant
-        // and + - + - them up together
-        for (int col = 0; col < COLS; col++) {
-            excludedRowColMatrix = getMatrixWithExcludedRowAndCol(row, col);
-            excludedRowColDeterminant = excludedRowColMatrix.determinant();
-            sum += get(row, col) * excludedRowColDeterminant * plusMinus;
-            plusMinus *= -1; // flip value of plusMinus for next iteration
+    // calculates the determinant while keeping the matrix in tiles on disk in directory, like echelonFormOutOfCore
+    public double determinantOutOfCore(Path directory) throws IOException {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find the determinant");
         }
 
-        return sum;
+        if (!validCache() || !hasCachedDeterminant) {
+            SolverMetrics.OperationEvent event = SolverMetrics.beginOperation("determinant", ROWS, COLS);
+            long start = SolverMetrics.startPhase();
+
+            OutOfCoreElimination elimination = new OutOfCoreElimination(this, directory);
+            try {
+                cachedDeterminant = elimination.determinant();
+            } catch (IOException | RuntimeException e) {
+                elimination.close();
+                throw e;
+            }
+            elimination.delete();
+            hasCachedDeterminant = true;
+
+            SolverMetrics.endPhase(SolverMetrics.Phase.ELIMINATION, start);
+            SolverMetrics.endOperation(event);
+        }
+
+        return cachedDeterminant;
     }
 
-    // HELPER FUNCTIONS
+    // calculates the exact determinant of a matrix that only contains integers, whether or not exact mode is on
+    public BigInteger exactDeterminant() {
 
-    // checks whether an inputted row value is within the bounds of the matrix
-    private boolean validRow(int row) {
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find the determinant");
+        }
 
-        return row >= 0 && row < ROWS;
+        return new BareissElimination(this).determinant();
+    }
 
+    // returns the LU decomposition of this (square) matrix
+    // the decomposition is kept until the data changes, so repeated calls don't factor again
+    public LUDecomposition factorization() {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find its LU decomposition");
+        }
+
+        if (!validCache() || cachedFactorization == null) {
+            cachedFactorization = new LUDecomposition(this);
+        }
+
+        return cachedFactorization;
     }
 
-    // checks whether an inputted column value is within the bounds of the matrix
-    private boolean validCol(int col) {
+    // returns the Cholesky (or LDL^T) decomposition of this symmetric matrix
+    // the decomposition is kept until the data changes, like factorization()
+    public SymmetricDecomposition symmetricFactorization() {
 
-        return col >= 0 && col < COLS;
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find its symmetric decomposition");
+        }
+        if (!structure().isSymmetric()) {
+            throw new IllegalArgumentException("Matrix must be symmetric to find its symmetric decomposition");
+        }
+
+        if (!validCache() || cachedSymmetricFactorization == null) {
+            cachedSymmetricFactorization = new SymmetricDecomposition(data);
+        }
 
+        return cachedSymmetricFactorization;
     }
 
-    // for use with the determinant function
-    // returns a new matrix that contains values of this
-    // matrix without any from the specified row and column
-    private Matrix getMatrixWithExcludedRowAndCol(int excludedRow, int excludedCol) {
-        int newRows = ROWS - 1;
-        int newCols = COLS - 1;
+    // returns where the nonzero values of the matrix are, which decides how echelonForm and determinant work it out
+    // the analysis is kept until the data changes
+    public StructureAnalysis structure() {
 
-        if (newRows < 1 || newCols < 1) {
-            throw new IllegalArgumentException("Cannot make a new matrix with dimension of 0");
+        if (!validCache() || cachedStructure == null) {
+            cachedStructure = StructureAnalysis.of(data);
         }
 
-        Matrix m = new Matrix(newRows, newCols);
+        return cachedStructure;
+    }
+
+    // returns the number of nonzero rows in the reduced echelon form of the matrix, without changing it
+    // the reduced form is calculated on a copy and kept, so a later reducedEchelonForm() call can reuse it
+    public int rank() {
+        reducedForm();
+        return cachedRank;
+    }
 
-        // add either 0 or 1 to the row/column after excluded row/column has been hit
-        // to get values to line up correctly in the new matrix
-        int additionalRow = 0;
-        int additionalCol = 0;
+    // returns the values of the reduced echelon form of the matrix, without changing it
+    // the returned arrays are shared with the cache, so they must not be changed
+    double[][] reducedForm() {
 
-        for (int row = 0; row < ROWS; row++) {
-            // skip the excluded row and update the additionalRow variable
-            // to account for the excluded row when indexing the matrix
-            if (row == excludedRow) {
-                additionalRow = 1;
-                continue;
+        if (!validCache() || cachedReducedForm == null) {
+            double[][] fromFactorization = reducedFormFromFactorization();
+            if (fromFactorization != null) {
+                cachedReducedForm = fromFactorization;
+                cachedRank = ROWS;
+                return cachedReducedForm;
             }
-            // reset every row because columns before the skipped one don't need to add 1 to the index
-            additionalCol = 0;
+
+            Matrix copy = new Matrix(ROWS, COLS, StorageMode.FLAT);
+            double[] rowValues = new double[COLS];
+            for (int row = 0; row < ROWS; row++) {
+                data.copyRow(row, rowValues);
+                copy.data.setRow(row, rowValues);
+            }
+            copy.reducedEchelonForm();
+            cachedReducedForm = copy.cachedReducedForm;
+            cachedRank = copy.cachedRank;
+        }
+
+        return cachedReducedForm;
+    }
+
+    // returns a number that is the same for any two matrices with the same size and values
+    // used to look up cached results for identical matrices
+    public long contentHash() {
+
+        long hash = 31L * ROWS + COLS;
+        for (int row = 0; row < ROWS; row++) {
             for (int col = 0; col < COLS; col++) {
-                // skip the excluded column and update the additionalCol variable
-                // to account for the excluded column when indexing the matrix
-                if (col == excludedCol) {
-                    additionalCol = 1;
-                    continue;
-                }
-                m.set(row - additionalRow, col - additionalCol, get(row, col));
+                hash = hash * 1_000_003L + Double.doubleToLongBits(data.get(row, col) + 0.0); // + 0.0 so -0 == 0
             }
         }
 
-        return m;
+        return hash ^ (hash >>> 32);
     }
 
-    // TO_STRING RELATED FUNCTIONS
+    // factors the coefficient part of this augmented matrix (every column but the last) into LU
+    // the factorization can then solve for any number of right hand sides without eliminating again
+    // it is kept like factorization(), so reducedEchelonForm can use it while the coefficients are unchanged
+    public LUDecomposition factorCoefficients() {
 
-    public String toString() {
-        return toString(false);
+        if (ROWS != COLS - 1) {
+            throw new IllegalArgumentException("The coefficient part of the matrix must be square to factor it");
+        }
+
+        if (!validCache() || cachedCoefficientFactorization == null) {
+            cachedCoefficientFactorization = new LUDecomposition(this, COLS - 1, LUDecomposition.getDefaultBlockSize());
+        }
+
+        return cachedCoefficientFactorization;
     }
 
-    public String toString(boolean augmented) {
+    // finds the x that minimizes |Ax - b| for this augmented matrix [A | b], with Householder QR
+    // for overdetermined systems, which reducedEchelonForm can only show to be inconsistent
+    // see LeastSquaresSolver to stream in rows that don't fit in memory
+    public LeastSquaresSolver.Solution leastSquares() {
+        return LeastSquaresSolver.solve(this);
+    }
 
-        // only goes through the expensive String recalculation process when changes have occurred to the data
-        if (!dataChanged) return asString;
-        dataChanged = false;
+    // solves this augmented matrix [A | b] with a float factorization of A, refined to double accuracy
+    // (see MixedPrecisionSolver), which is faster than factoring in double for large well conditioned systems
+    // throws IllegalArgumentException if A isn't square, and IllegalStateException if A is singular
+    public MixedPrecisionSolver.Solution solveMixedPrecision() {
+        return MixedPrecisionSolver.solveAugmented(this);
+    }
 
-        // get display values for every value in the matrix and spaces associated with them
-        String[][] displayValues = new String[ROWS][COLS];
-        String[][] spaces;
+    // COPIES AND VIEWS
 
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
-                displayValues[row][col] = displayValue(data[row][col]);
-            }
+    // returns a copy of the matrix that can be changed without affecting this one
+    // the copy shares this matrix's memory until either is changed (see MatrixStorage.share), so it is O(rows)
+    // instead of O(rows * cols), and results already calculated for this matrix carry over to it
+    public Matrix copy() {
+        return withCachedResults(new Matrix(data.share(), false));
+    }
+
+    // returns a matrix with the current values that can never change, shared copy-on-write like copy()
+    // later changes to this matrix are not seen by it, and it is reused until this matrix changes
+    public Matrix immutableCopy() {
+
+        if (immutable) return this;
+
+        if (!validCache() || cachedImmutableCopy == null) {
+            cachedImmutableCopy = withCachedResults(new Matrix(data.share(), true));
         }
-        spaces = getSpaces(displayValues);
 
-        // put everything together
-        StringBuilder builder = new StringBuilder();
-        for (int row = 0; row < ROWS; row++) {
-            builder.append("|  "); // left edge of matrix
-            for (int col = 0; col < COLS - 1; col++) {
-                builder.append(displayValues[row][col]);
-                builder.append(spaces[row][col]);
-            }
-            if (COLS > 1 && augmented) { // don't show the augmented matrix bar if there is only one column
-                builder.append("|  ");
+        return cachedImmutableCopy;
+    }
+
+    // returns an immutable rows x cols view of the block starting at (row, col), without copying any values
+    // like immutableCopy, later changes to this matrix are not seen by the view
+    public Matrix subMatrix(int row, int col, int rows, int cols) {
+
+        if (rows < 0 || cols < 0 || !validRange(row, rows, ROWS) || !validRange(col, cols, COLS)) {
+            throw new IllegalArgumentException("The submatrix must be within the bounds of the matrix");
+        }
+
+        return new Matrix(SubMatrixStorage.slice(immutableCopy().data, row, col, rows, cols), true);
+    }
+
+    // returns an immutable view of the matrix without the row and col, without copying any values
+    // the determinant of the minor of a square matrix is that entry's minor in a cofactor expansion
+    public Matrix minor(int row, int col) {
+
+        if (!validRow(row) || !validCol(col)) {
+            throw new IllegalArgumentException("Inputted location out of bounds");
+        }
+
+        return new Matrix(SubMatrixStorage.minor(immutableCopy().data, row, col), true);
+    }
+
+    // HELPER FUNCTIONS
+
+    // throws if the matrix is immutable, called first by every method that changes the data
+    private void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("The matrix is immutable, copy() it to get one that can change");
+        }
+    }
+
+    // gives a copy with the same values the results already calculated for this matrix, which are never changed
+    // once calculated (an updated factorization is a new one), so they can be shared
+    private Matrix withCachedResults(Matrix copy) {
+
+        copy.exactMode = exactMode;
+
+        if (validCache()) {
+            copy.cachedVersion = copy.version;
+            copy.cachedFactorization = cachedFactorization;
+            copy.cachedCoefficientFactorization = cachedCoefficientFactorization;
+            copy.cachedSymmetricFactorization = cachedSymmetricFactorization;
+            copy.cachedDeterminant = cachedDeterminant;
+            copy.hasCachedDeterminant = hasCachedDeterminant;
+            copy.cachedRank = cachedRank;
+            copy.cachedReducedForm = cachedReducedForm;
+            copy.cachedStructure = cachedStructure;
+        }
+
+        return copy;
+    }
+
+    // records that the data changed, so the cached string and results are recalculated when next needed
+    private void markChanged() {
+        dataChanged = true;
+        version++;
+    }
+
+    // clears the cached results if they were calculated for an older version of the data
+    // returns whether they were still valid
+    private boolean validCache() {
+
+        if (cachedVersion == version) return true;
+
+        cachedVersion = version;
+        cachedFactorization = null;
+        cachedCoefficientFactorization = null;
+        cachedSymmetricFactorization = null;
+        hasCachedDeterminant = false;
+        cachedRank = -1;
+        cachedReducedForm = null;
+        cachedStructure = null;
+        cachedImmutableCopy = null;
+
+        return false;
+    }
+
+    // whether there is a factorization of the current data that set or setRow can keep up to date
+    private boolean canUpdateFactorizations() {
+        return cachedVersion == version && (cachedFactorization != null || cachedCoefficientFactorization != null);
+    }
+
+    // carries the cached factorizations over a change to one row, just made by set or setRow,
+    // with an O(n^2) rank one update instead of dropping them and factoring again in O(n^3) when next needed
+    // if an update would be too inaccurate the factorization is dropped, the other cached results always are
+    private void updateFactorizations(int row, double[] rowChange) {
+
+        LUDecomposition square = cachedFactorization;
+        LUDecomposition coefficients = cachedCoefficientFactorization;
+        validCache();
+
+        if (square != null) {
+            cachedFactorization = square.withRowUpdate(row, rowChange);
+        }
+        if (coefficients != null) {
+            cachedCoefficientFactorization = coefficients.withRowUpdate(row, Arrays.copyOf(rowChange, COLS - 1));
+        }
+
+    }
+
+    // finds the determinant the cheapest way the structure of the matrix allows
+    // a triangular matrix's is exactly the product of its diagonal
+    private double structuredDeterminant(SolverMetrics.OperationEvent event) {
+
+        StructureAnalysis structure = structure();
+        SolverMetrics.describeStructure(event, structure);
+
+        if (structure.isTriangular()) {
+            double det = 1;
+            for (int i = 0; i < ROWS; i++) {
+                det *= data.get(i, i);
             }
-            builder.append(displayValues[row][COLS - 1]);
-            builder.append(spaces[row][COLS - 1]);
-            builder.append("|\n"); // right edge of matrix
+            return det;
         }
 
-        asString = builder.toString();
-        return asString;
+        if (structure.getStructure() == StructureAnalysis.Structure.BANDED) {
+            return new BandedLUDecomposition(data, structure.getLowerBandwidth(), structure.getUpperBandwidth(),
+                    false).determinant();
+        }
+
+        // a singular symmetric matrix goes on to LU, which decides the same way as every other matrix
+        if (structure.isSymmetric()) {
+            SymmetricDecomposition symmetric = symmetricFactorization();
+            if (!symmetric.isSingular()) {
+                return symmetric.determinant();
+            }
+        }
 
+        return factorization().determinant();
     }
 
-    // returns a nice looking value for display purposes
-    // removes decimal from any integer
-    // leaves only 2 decimal places for non-integers
-    private String displayValue(double value) {
-        String displayVal = "" + value;
-        String[] parts = displayVal.split("\\.");
+    // works out the reduced echelon form from a cached factorization in O(n^2) (O(n^3) if it has rank one updates
+    // and has to be factored again), null if there isn't one to use
+    // an invertible square matrix reduces to I, and an augmented matrix with invertible coefficients to [I | x]
+    private double[][] reducedFormFromFactorization() {
+
+        if (!validCache() || exactMode) return null;
+
+        // an updated factorization only knows its base wasn't singular, the updates are just checked for growth
+        // (see LUDecomposition.withRowUpdate), so the rank has to come from factoring the current data again
+        if (cachedFactorization != null && cachedFactorization.getUpdateCount() > 0) {
+            cachedFactorization = new LUDecomposition(this);
+        }
+        if (cachedCoefficientFactorization != null && cachedCoefficientFactorization.getUpdateCount() > 0) {
+            cachedCoefficientFactorization = new LUDecomposition(this, COLS - 1, LUDecomposition.getDefaultBlockSize());
+        }
 
-        // integer
-        if (parts[1].equals("0")) {
-            return parts[0];
+        if (cachedFactorization != null && !cachedFactorization.isSingular()) {
+            double[][] identity = new double[ROWS][COLS];
+            for (int i = 0; i < ROWS; i++) {
+                identity[i][i] = 1;
+            }
+            return identity;
         }
 
-        // 2 digit decimal
-        if (parts[1].length() > 2) {
-            return parts[0] + "." + parts[1].substring(0, 2);
+        if (cachedCoefficientFactorization != null && !cachedCoefficientFactorization.isSingular()) {
+            double[] b = new double[ROWS];
+            for (int row = 0; row < ROWS; row++) {
+                b[row] = data.get(row, COLS - 1);
+            }
+            double[] x = cachedCoefficientFactorization.solve(b);
+
+            double[][] reduced = new double[ROWS][COLS];
+            for (int row = 0; row < ROWS; row++) {
+                reduced[row][row] = 1;
+                // to eliminate floating point errors, the same as elimination does
+                reduced[row][COLS - 1] = Math.abs(x[row]) < PRECISION ? 0 : x[row];
+            }
+            return reduced;
         }
 
-        // less than 2 digit decimal
-        return displayVal;
+        return null;
     }
 
-    // takes in 2d string array of display values for the matrix
-    // returns a 2d array containing the spaces that should follow each value
-    // to make each subsequent column start at the same spot horizontally
-    private String[][] getSpaces(String[][] displayValues) {
-        String[][] spaces = new String[ROWS][COLS];
-        final int EXTRA_SPACES = 2; // minimum amount of spaces to follow each number
+    // works out the reduced echelon form of a banded or symmetric matrix with a pivot in every row,
+    // null for anything else
+    // the leading square part reduces to I and every other column to the solution of the system with it as the
+    // right hand side, using BandedLUDecomposition (O(n * b^2)) or SymmetricDecomposition (half the work of LU)
+    // instead of eliminating and back substituting through every row
+    private double[][] reducedFormFromStructure(SolverMetrics.OperationEvent event) {
+
+        if (exactMode) return null;
+
+        StructureAnalysis structure = structure();
+        UnaryOperator<double[]> solver;
+        if (structure.getStructure() == StructureAnalysis.Structure.BANDED) {
+            BandedLUDecomposition lu = new BandedLUDecomposition(data,
+                    structure.getLowerBandwidth(), structure.getUpperBandwidth(), true);
+            if (lu.isSingular()) return null;
+            solver = lu::solve;
+        } else if (structure.isSymmetric() && !structure.isTriangular()) {
+            SymmetricDecomposition symmetric = ROWS == COLS ? symmetricFactorization()
+                    : new SymmetricDecomposition(data);
+            if (symmetric.isSingular()) return null;
+            solver = symmetric::solve;
+        } else {
+            return null;
+        }
+        SolverMetrics.describeStructure(event, structure);
 
-        for (int col = 0; col < COLS; col++) {
-            // find longest value in string form
-            int longestValueLen = 0;
+        double[][] reduced = new double[ROWS][COLS];
+        double[] b = new double[ROWS];
+        for (int col = ROWS; col < COLS; col++) {
             for (int row = 0; row < ROWS; row++) {
-                int valueLen = displayValues[row][col].length();
-                if (valueLen > longestValueLen) {
-                    longestValueLen = valueLen;
-                }
+                b[row] = data.get(row, col);
             }
-            // put a corresponding amount of spaces in the spaces array
-            // so they all will match up at the start of the next column
+            double[] x = solver.apply(b);
             for (int row = 0; row < ROWS; row++) {
-                int valueLen = displayValues[row][col].length();
-                // match the length of the longest value + specified number of extra spaces
-                int numOfSpaces = longestValueLen - valueLen + EXTRA_SPACES;
+                // to eliminate floating point errors, the same as elimination does
+                reduced[row][col] = Math.abs(x[row]) < PRECISION ? 0 : x[row];
+            }
+        }
+        for (int row = 0; row < ROWS; row++) {
+            reduced[row][row] = 1;
+        }
+
+        return reduced;
+    }
 
-                StringBuilder spacesBuilder = new StringBuilder();
-                for (int i = 0; i < numOfSpaces; i++) {
-                    spacesBuilder.append(" ");
+    private static int countNonZeroRows(double[][] values) {
+        int count = 0;
+        for (double[] row : values) {
+            for (double value : row) {
+                if (value != 0) {
+                    count++;
+                    break;
                 }
-                spaces[row][col] = spacesBuilder.toString();
             }
         }
+        return count;
+    }
+
+    // checks whether an inputted row value is within the bounds of the matrix
+    private boolean validRow(int row) {
+
+        return row >= 0 && row < ROWS;
+
+    }
+
+    // checks whether an inputted column value is within the bounds of the matrix
+    private boolean validCol(int col) {
+
+        return col >= 0 && col < COLS;
+
+    }
+
+    // checks whether count rows or columns from start fit within size
+    private static boolean validRange(int start, int count, int size) {
+
+        return start >= 0 && start <= size && count <= size - start;
+
+    }
+
+    // creates the storage for a new matrix with the specified layout
+    private static MatrixStorage createStorage(int rows, int cols, StorageMode mode) {
+
+        if (rows < 0 || cols < 0) throw new IllegalArgumentException("The matrix cannot have a dimension of 0");
+
+        if (mode == StorageMode.FLAT) {
+            return new FlatStorage(rows, cols);
+        }
+        if (mode == StorageMode.OFF_HEAP) {
+            return OffHeapStorage.allocate(rows, cols);
+        }
+        return new NestedArrayStorage(rows, cols);
+    }
+
+    // the layout a storage uses, so a scratch copy of it can be made with createStorage
+    private static StorageMode storageMode(MatrixStorage storage) {
+
+        if (storage instanceof FlatStorage) return StorageMode.FLAT;
+        if (storage instanceof OffHeapStorage) return StorageMode.OFF_HEAP;
+        return StorageMode.NESTED;
+    }
+
+    // returns a copy of the values in the matrix, used by the decompositions
+    // so they can work on their own data without changing this matrix
+    double[][] copyData() {
+        return copyData(COLS);
+    }
+
+    // same as copyData, but only copies the first cols columns
+    double[][] copyData(int cols) {
+        double[][] copy = new double[ROWS][];
+        double[] rowValues = cols == COLS ? null : new double[COLS];
+        for (int row = 0; row < ROWS; row++) {
+            if (rowValues == null) {
+                copy[row] = new double[COLS];
+                data.copyRow(row, copy[row]);
+            } else {
+                data.copyRow(row, rowValues);
+                copy[row] = Arrays.copyOf(rowValues, cols);
+            }
+        }
+        return copy;
+    }
+
+    // TO_STRING RELATED FUNCTIONS
+
+    public String toString() {
+        return toString(false);
+    }
+
+    public String toString(boolean augmented) {
+
+        // only goes through the expensive String recalculation process when changes have occurred to the data
+        // (or the last String was made with a different augmented setting)
+        if (!dataChanged && asString != null && augmented == asStringAugmented) return asString;
+        dataChanged = false;
+
+        long start = SolverMetrics.startPhase();
+        StringBuilder builder = new StringBuilder();
+        try {
+            MatrixRenderer.render(this, augmented, builder);
+        } catch (IOException e) { // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+
+        asString = builder.toString();
+        asStringAugmented = augmented;
+        SolverMetrics.endPhase(SolverMetrics.Phase.TO_STRING, start);
+        return asString;
+
+    }
+
+    // returns only the first and last edge rows and columns of the matrix, with ... in place of the rest
+    // useful for matrices that are too large to print in full
+    public String toPreviewString(boolean augmented, int edge) {
+
+        StringBuilder builder = new StringBuilder();
+        try {
+            MatrixRenderer.renderPreview(this, augmented, edge, builder);
+        } catch (IOException e) { // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
 
-        return spaces;
+        return builder.toString();
     }
 }
\ No newline at end of file
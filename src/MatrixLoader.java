@@ -0,0 +1,582 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+// reads matrices from files or streams without going through Scanner
+// supported formats:
+//     text: one row per line, values separated by spaces, tabs or commas, lines starting with # are skipped
+//     Matrix Market (.mtx): coordinate or array, real/integer/pattern, general/symmetric/skew-symmetric
+//     binary (.msb): the 4 bytes "MSB1", rows and cols as little-endian int32s,
+//                    then every value as a little-endian float64, row by row
+public final class MatrixLoader {
+
+    static final byte[] BINARY_MAGIC = {'M', 'S', 'B', '1'};
+    static final int BINARY_HEADER_SIZE = 12;
+
+    // how many bytes of a binary file are mapped at once, mappings are limited to 2GB each
+    private static final long MAP_CHUNK_SIZE = 1L << 28;
+
+    private MatrixLoader() {
+    }
+
+    // reads a file, picking the format from its extension (.mtx, .msb, anything else is text)
+    public static Matrix read(Path path, Matrix.StorageMode mode) throws IOException {
+
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".msb")) {
+            return readBinary(path, mode);
+        }
+
+        try (InputStream in = Files.newInputStream(path)) {
+            if (name.endsWith(".mtx")) {
+                return readMatrixMarket(in, mode);
+            }
+            return readText(in, mode);
+        }
+    }
+
+    // TEXT
+
+    // reads rows of numbers separated by spaces, tabs or commas until the end of the stream
+    // every row has to have the same number of values, blank lines are skipped
+    public static Matrix readText(InputStream in, Matrix.StorageMode mode) throws IOException {
+
+        NumberTokenizer tokens = new NumberTokenizer(in, '#');
+        List<double[]> rows = new ArrayList<>();
+        double[] row = new double[16];
+        int cols = -1;
+        int count = 0;
+
+        while (true) {
+            int type = tokens.next();
+
+            if (type == NumberTokenizer.NUMBER) {
+                if (count == row.length) {
+                    row = Arrays.copyOf(row, row.length * 2);
+                }
+                row[count++] = tokens.value;
+            } else { // end of a line or of the whole input
+                if (count > 0) {
+                    if (cols == -1) {
+                        cols = count;
+                    } else if (count != cols) {
+                        throw new IllegalArgumentException("Line " + tokens.getLine() + " has " + count +
+                                " values, but the first row has " + cols);
+                    }
+                    rows.add(Arrays.copyOf(row, cols));
+                    count = 0;
+                }
+                if (type == NumberTokenizer.END_OF_INPUT) break;
+            }
+        }
+
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("The input does not contain any values");
+        }
+
+        return toMatrix(rows, cols, mode);
+    }
+
+    // reads the rows of one matrix in a stream of several, which ends at the first blank line after its rows
+    // or at the end of the input, returns null if there are no rows left
+    static Matrix readTextBlock(NumberTokenizer tokens, Matrix.StorageMode mode) throws IOException {
+
+        List<double[]> rows = new ArrayList<>();
+        double[] row = new double[16];
+        int cols = -1;
+        int count = 0;
+
+        while (true) {
+            int type = tokens.next();
+
+            if (type == NumberTokenizer.NUMBER) {
+                if (count == row.length) {
+                    row = Arrays.copyOf(row, row.length * 2);
+                }
+                row[count++] = tokens.value;
+            } else if (count > 0) {
+                if (cols == -1) {
+                    cols = count;
+                } else if (count != cols) {
+                    throw new IllegalArgumentException("Line " + tokens.getLine() + " has " + count +
+                            " values, but the first row of its matrix has " + cols);
+                }
+                rows.add(Arrays.copyOf(row, cols));
+                count = 0;
+            } else if (!rows.isEmpty()) { // a blank line after the rows
+                break;
+            }
+
+            if (type == NumberTokenizer.END_OF_INPUT) break;
+        }
+
+        return rows.isEmpty() ? null : toMatrix(rows, cols, mode);
+    }
+
+    // MATRIX MARKET
+
+    public static Matrix readMatrixMarket(InputStream in, Matrix.StorageMode mode) throws IOException {
+
+        NumberTokenizer tokens = new NumberTokenizer(in, '%');
+
+        // %%MatrixMarket matrix <coordinate|array> <real|integer|pattern> <general|symmetric|skew-symmetric>
+        String[] header = tokens.readHeaderLine().trim().toLowerCase().split("\\s+");
+        if (header.length < 5 || !header[0].equals("%%matrixmarket") || !header[1].equals("matrix")) {
+            throw new IllegalArgumentException("Missing %%MatrixMarket matrix header");
+        }
+
+        boolean coordinate = header[2].equals("coordinate");
+        boolean pattern = header[3].equals("pattern");
+        String symmetry = header[4];
+        if (!coordinate && !header[2].equals("array")) {
+            throw new IllegalArgumentException("Unsupported Matrix Market format: " + header[2]);
+        }
+        if (header[3].equals("complex")) {
+            throw new IllegalArgumentException("Complex Matrix Market files are not supported");
+        }
+        if (!symmetry.equals("general") && !symmetry.equals("symmetric") && !symmetry.equals("skew-symmetric")) {
+            throw new IllegalArgumentException("Unsupported Matrix Market symmetry: " + symmetry);
+        }
+
+        int rows = (int) nextNumber(tokens);
+        int cols = (int) nextNumber(tokens);
+        long entries = coordinate ? (long) nextNumber(tokens) : (long) rows * cols;
+
+        Matrix m = new Matrix(rows, cols, mode);
+
+        if (coordinate) {
+            for (long i = 0; i < entries; i++) {
+                int row = (int) nextNumber(tokens) - 1; // Matrix Market indices start at 1
+                int col = (int) nextNumber(tokens) - 1;
+                double value = pattern ? 1 : nextNumber(tokens);
+                setMirrored(m, row, col, value, symmetry);
+            }
+        } else { // array format lists every value column by column, only the lower triangle if symmetric
+            boolean general = symmetry.equals("general");
+            for (int col = 0; col < cols; col++) {
+                int startRow = general ? 0 : symmetry.equals("symmetric") ? col : col + 1;
+                for (int row = startRow; row < rows; row++) {
+                    setMirrored(m, row, col, nextNumber(tokens), symmetry);
+                }
+            }
+        }
+
+        return m;
+    }
+
+    // BINARY
+
+    // reads a binary matrix by mapping the file into memory in chunks
+    public static Matrix readBinary(Path path, Matrix.StorageMode mode) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            int[] size = readBinaryHeader(channel);
+            Matrix m = new Matrix(size[0], size[1], mode);
+            forEachBinaryRow(channel, size[0], size[1], (rowValues, row) -> m.setRow(row, rowValues));
+
+            return m;
+        }
+    }
+
+    // writes a matrix in the binary format read by readBinary
+    public static void writeBinary(Matrix m, Path path) throws IOException {
+
+        try (OutputStream out = Files.newOutputStream(path)) {
+
+            int cols = m.getCols();
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(BINARY_HEADER_SIZE, cols * Double.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.put(BINARY_MAGIC).putInt(m.getRows()).putInt(cols);
+            out.write(buffer.array(), 0, buffer.position());
+
+            for (int row = 0; row < m.getRows(); row++) {
+                buffer.clear();
+                for (int col = 0; col < cols; col++) {
+                    buffer.putDouble(m.get(row, col));
+                }
+                out.write(buffer.array(), 0, buffer.position());
+            }
+        }
+    }
+
+    // STREAMING
+
+    // passes each row of a text or binary file to action in order, without ever holding more than one row,
+    // for inputs too large to load as a Matrix
+    // the same array is reused for every row, so action has to copy anything it keeps
+    public static void forEachRow(Path path, Consumer<double[]> action) throws IOException {
+
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".mtx")) {
+            throw new IllegalArgumentException("Matrix Market files are not stored row by row, so can't be streamed");
+        }
+
+        if (name.endsWith(".msb")) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                int[] size = readBinaryHeader(channel);
+                forEachBinaryRow(channel, size[0], size[1], (rowValues, row) -> action.accept(rowValues));
+            }
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(path)) {
+            forEachTextRow(in, action);
+        }
+    }
+
+    // passes each row of a stream in the text format to action, like forEachRow
+    public static void forEachTextRow(InputStream in, Consumer<double[]> action) throws IOException {
+
+        NumberTokenizer tokens = new NumberTokenizer(in, '#');
+        double[] row = new double[16];
+        int cols = -1;
+        int count = 0;
+
+        while (true) {
+            int type = tokens.next();
+
+            if (type == NumberTokenizer.NUMBER) {
+                if (count == row.length) {
+                    row = Arrays.copyOf(row, row.length * 2);
+                }
+                row[count++] = tokens.value;
+            } else { // end of a line or of the whole input
+                if (count > 0) {
+                    if (cols == -1) {
+                        cols = count;
+                        row = Arrays.copyOf(row, cols);
+                    } else if (count != cols) {
+                        throw new IllegalArgumentException("Line " + tokens.getLine() + " has " + count +
+                                " values, but the first row has " + cols);
+                    }
+                    action.accept(row);
+                    count = 0;
+                }
+                if (type == NumberTokenizer.END_OF_INPUT) break;
+            }
+        }
+
+        if (cols == -1) {
+            throw new IllegalArgumentException("The input does not contain any values");
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    // checks the header of a binary matrix and returns its rows and cols
+    private static int[] readBinaryHeader(FileChannel channel) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                throw new IllegalArgumentException("The file is too short to be a binary matrix");
+            }
+        }
+        header.flip();
+
+        byte[] magic = new byte[BINARY_MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, BINARY_MAGIC)) {
+            throw new IllegalArgumentException("The file is not a binary matrix");
+        }
+
+        int rows = header.getInt();
+        int cols = header.getInt();
+        long expectedSize = BINARY_HEADER_SIZE + (long) rows * cols * Double.BYTES;
+        if (rows < 0 || cols < 0 || channel.size() < expectedSize) {
+            throw new IllegalArgumentException("The size of the file does not match its header");
+        }
+
+        return new int[] {rows, cols};
+    }
+
+    // maps the values of a binary matrix a chunk at a time, passing each row and its index to action
+    private static void forEachBinaryRow(FileChannel channel, int rows, int cols, ObjIntConsumer<double[]> action)
+            throws IOException {
+
+        double[] rowValues = new double[cols];
+        long rowBytes = (long) cols * Double.BYTES;
+        int rowsPerChunk = (int) Math.max(1, Math.min(rows, MAP_CHUNK_SIZE / Math.max(1, rowBytes)));
+
+        for (int startRow = 0; startRow < rows; startRow += rowsPerChunk) {
+            int chunkRows = Math.min(rowsPerChunk, rows - startRow);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    BINARY_HEADER_SIZE + startRow * rowBytes, chunkRows * rowBytes);
+            DoubleBuffer values = mapped.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            for (int row = startRow; row < startRow + chunkRows; row++) {
+                values.get(rowValues);
+                action.accept(rowValues, row);
+            }
+        }
+    }
+
+    private static Matrix toMatrix(List<double[]> rows, int cols, Matrix.StorageMode mode) {
+
+        Matrix m = new Matrix(rows.size(), cols, mode);
+        for (int i = 0; i < rows.size(); i++) {
+            m.setRow(i, rows.get(i));
+            rows.set(i, null); // let each row be collected once it has been copied
+        }
+
+        return m;
+    }
+
+    // returns the next number, skipping line breaks
+    private static double nextNumber(NumberTokenizer tokens) throws IOException {
+
+        while (true) {
+            int type = tokens.next();
+            if (type == NumberTokenizer.NUMBER) return tokens.value;
+            if (type == NumberTokenizer.END_OF_INPUT) {
+                throw new IllegalArgumentException("The input ended before every value was read");
+            }
+        }
+    }
+
+    // sets the value, along with its mirror across the diagonal for symmetric files
+    private static void setMirrored(Matrix m, int row, int col, double value, String symmetry) {
+
+        m.set(row, col, value);
+        if (row != col) {
+            if (symmetry.equals("symmetric")) {
+                m.set(col, row, value);
+            } else if (symmetry.equals("skew-symmetric")) {
+                m.set(col, row, -value);
+            }
+        }
+
+    }
+
+    // splits a stream of bytes into numbers and line breaks, parsing numbers straight from the bytes
+    // so no String is created per value
+    static class NumberTokenizer {
+
+        static final int NUMBER = 0;
+        static final int END_OF_LINE = 1;
+        static final int END_OF_INPUT = 2;
+
+        // powers of 10 that can be represented exactly as doubles
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+            }
+        }
+
+        private final InputStream in;
+        private final byte commentStart;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+
+        // the characters of the current token, only turned into a String when the fast path can't parse it
+        private char[] token = new char[64];
+        private int tokenLength;
+
+        private int line = 1;
+        private boolean atLineStart = true;
+
+        // value of the last NUMBER token
+        double value;
+
+        NumberTokenizer(InputStream in, char commentStart) {
+            this.in = in;
+            this.commentStart = (byte) commentStart;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        // moves to the start of the next line with something on it other than a comment
+        // returns false if there are no lines left
+        boolean skipBlankLines() throws IOException {
+
+            int b = read();
+            while (true) {
+                if (b == ' ' || b == '\t' || b == ',' || b == '\r') {
+                    b = read();
+                } else if (b == '\n') {
+                    line++;
+                    atLineStart = true;
+                    b = read();
+                } else if (b == commentStart && atLineStart) {
+                    while (b != -1 && b != '\n') {
+                        b = read();
+                    }
+                } else {
+                    break;
+                }
+            }
+
+            if (b == -1) return false;
+            position--; // leave the first character for whoever reads the line
+            return true;
+        }
+
+        // reads the rest of the current line as a String, used for the few header lines
+        String readHeaderLine() throws IOException {
+
+            StringBuilder builder = new StringBuilder();
+            int b;
+            while ((b = read()) != -1 && b != '\n') {
+                if (b != '\r') builder.append((char) b);
+            }
+            line++;
+            atLineStart = true;
+            return builder.toString();
+        }
+
+        int next() throws IOException {
+
+            int b = read();
+
+            // skip separators and comment lines
+            while (true) {
+                if (b == ' ' || b == '\t' || b == ',' || b == '\r') {
+                    b = read();
+                } else if (b == commentStart && atLineStart) {
+                    while (b != -1 && b != '\n') {
+                        b = read();
+                    }
+                    if (b == '\n') {
+                        line++;
+                        b = read();
+                    }
+                } else {
+                    break;
+                }
+            }
+
+            if (b == -1) return END_OF_INPUT;
+            if (b == '\n') {
+                line++;
+                atLineStart = true;
+                return END_OF_LINE;
+            }
+
+            atLineStart = false;
+            tokenLength = 0;
+            while (b != -1 && b != ' ' && b != '\t' && b != ',' && b != '\r' && b != '\n') {
+                if (tokenLength == token.length) {
+                    token = Arrays.copyOf(token, token.length * 2);
+                }
+                token[tokenLength++] = (char) b;
+                b = read();
+            }
+            if (b != -1) position--; // leave the separator or line break for the next call
+
+            value = parseToken();
+            return NUMBER;
+        }
+
+        // parses [+-]digits[.digits][(e|E)[+-]digits], falling back to Double.parseDouble for anything
+        // that can't be calculated exactly from a 15 digit mantissa and a small power of 10
+        private double parseToken() {
+
+            int i = 0;
+            boolean negative = false;
+            if (token[i] == '-' || token[i] == '+') {
+                negative = token[i] == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean anyDigits = false;
+
+            while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+                anyDigits = true;
+                if (mantissa != 0 || token[i] != '0') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (token[i] - '0');
+                    } else {
+                        exponent++;
+                    }
+                    digits++;
+                }
+                i++;
+            }
+            if (i < tokenLength && token[i] == '.') {
+                i++;
+                while (i < tokenLength && token[i] >= '0' && token[i] <= '9') {
+                    anyDigits = true;
+                    if (mantissa != 0 || token[i] != '0') {
+                        if (digits < 18) {
+                            mantissa = mantissa * 10 + (token[i] - '0');
+                            exponent--;
+                        }
+                        digits++;
+                    } else {
+                        exponent--;
+                    }
+                    i++;
+                }
+            }
+            if (anyDigits && i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+                    negativeExponent = token[i] == '-';
+                    i++;
+                }
+                int written = 0;
+                int start = i;
+                while (i < tokenLength && token[i] >= '0' && token[i] <= '9' && written < 100000) {
+                    written = written * 10 + (token[i] - '0');
+                    i++;
+                }
+                if (i == start) anyDigits = false; // "1e" isn't a number
+                exponent += negativeExponent ? -written : written;
+            }
+
+            if (!anyDigits || i != tokenLength || digits > 15 || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+                return slowParse();
+            }
+
+            // both the mantissa and the power of 10 are exact, so a single operation rounds correctly
+            double result = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -result : result;
+        }
+
+        private double slowParse() {
+            String text = new String(token, 0, tokenLength);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number \"" + text + "\" on line " + line);
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+    }
+}
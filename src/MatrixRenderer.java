@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+// writes matrices as text, used by Matrix.toString
+// numbers are formatted straight into a reusable line buffer instead of building a String per value,
+// and each line is handed to the output as soon as it is complete
+// every value is shown the same way Matrix always has: integers without a decimal,
+// everything else cut off (not rounded) after 2 decimal places
+public final class MatrixRenderer {
+
+    // minimum amount of spaces to follow each number
+    private static final int EXTRA_SPACES = 2;
+
+    private static final String ELLIPSIS = "...";
+
+    private MatrixRenderer() {
+    }
+
+    // writes every value of the matrix
+    public static void render(Matrix m, boolean augmented, Appendable out) throws IOException {
+        renderPreview(m, augmented, Integer.MAX_VALUE, out);
+    }
+
+    // writes only the first and last edge rows and columns of the matrix, with ... in place of the rest
+    // matrices with no more than 2 * edge rows and columns are written in full
+    public static void renderPreview(Matrix m, boolean augmented, int edge, Appendable out) throws IOException {
+
+        if (edge < 1) {
+            throw new IllegalArgumentException("The preview must show at least 1 row and column on each side");
+        }
+
+        int rows = m.getRows();
+        int cols = m.getCols();
+        if (rows == 0 || cols == 0) return;
+
+        boolean skipRows = rows > 2L * edge;
+        boolean skipCols = cols > 2L * edge;
+        int[] shownRows = shownIndices(rows, edge, skipRows);
+        int[] shownCols = shownIndices(cols, edge, skipCols);
+        int skippedColsAt = skipCols ? edge : -1; // the ... column goes before this position in shownCols
+        int skippedRowsAt = skipRows ? edge : -1;
+
+        // find how wide each shown column needs to be
+        char[] number = new char[32];
+        int[] widths = new int[shownCols.length];
+        for (int row : shownRows) {
+            for (int i = 0; i < shownCols.length; i++) {
+                int length = format(m.get(row, shownCols[i]), number);
+                if (length > widths[i]) {
+                    widths[i] = length;
+                }
+            }
+        }
+        if (skipRows) { // the ... row needs room as well
+            for (int i = 0; i < widths.length; i++) {
+                widths[i] = Math.max(widths[i], ELLIPSIS.length());
+            }
+        }
+
+        int lineLength = 3 + 3 + 2;
+        for (int width : widths) {
+            lineLength += width + EXTRA_SPACES;
+        }
+        if (skipCols) lineLength += ELLIPSIS.length() + EXTRA_SPACES;
+        char[] line = new char[lineLength];
+
+        for (int r = 0; r < shownRows.length; r++) {
+            if (r == skippedRowsAt) {
+                writeLine(out, line, fillLine(line, -1, m, shownCols, widths, skippedColsAt, augmented, number));
+            }
+            int length = fillLine(line, shownRows[r], m, shownCols, widths, skippedColsAt, augmented, number);
+            writeLine(out, line, length);
+        }
+    }
+
+    // writes a number the way it is displayed in a matrix into dest, returning how many characters it took
+    static int format(double value, char[] dest) {
+
+        double magnitude = Math.abs(value);
+
+        // Double.toString switches to scientific notation outside of this range
+        if (Double.isNaN(value) || Double.isInfinite(value) || (magnitude != 0 && (magnitude < 1e-3 || magnitude >= 1e7))) {
+            return formatSlowly(value, dest);
+        }
+
+        int length = 0;
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            dest[length++] = '-';
+        }
+
+        long integerPart = (long) magnitude;
+        length = writeDigits(integerPart, dest, length);
+
+        if (integerPart == magnitude) return length; // integer
+
+        // hundredths is the value with the decimal point moved right 2 places and everything after it cut off
+        double scaled = magnitude * 100;
+        long hundredths = (long) Math.rint(scaled);
+        boolean atMostTwoDecimals = hundredths / 100.0 == magnitude;
+        if (!atMostTwoDecimals) {
+            // the multiplication can round across a whole number, so correct it in either direction
+            hundredths = (long) Math.floor(scaled);
+            if (hundredths / 100.0 > magnitude) {
+                hundredths--;
+            } else if ((hundredths + 1) / 100.0 <= magnitude) {
+                hundredths++;
+            }
+        }
+
+        int tenthsDigit = (int) (hundredths / 10 % 10);
+        int hundredthsDigit = (int) (hundredths % 10);
+
+        dest[length++] = '.';
+        dest[length++] = (char) ('0' + tenthsDigit);
+        if (hundredthsDigit != 0 || !atMostTwoDecimals) { // 1.5 is shown as 1.5, not 1.50
+            dest[length++] = (char) ('0' + hundredthsDigit);
+        }
+
+        return length;
+    }
+
+    // HELPER FUNCTIONS
+
+    // fills line with the row (or the ... row when row is -1) and returns its length
+    private static int fillLine(char[] line, int row, Matrix m, int[] shownCols, int[] widths, int skippedColsAt,
+                                boolean augmented, char[] number) {
+
+        int length = 0;
+        line[length++] = '|'; // left edge of matrix
+        line[length++] = ' ';
+        line[length++] = ' ';
+
+        for (int i = 0; i < shownCols.length; i++) {
+
+            if (i == skippedColsAt) {
+                length = pad(line, length, ELLIPSIS, ELLIPSIS.length(), ELLIPSIS.length());
+            }
+
+            // don't show the augmented matrix bar if there is only one column
+            if (i == shownCols.length - 1 && shownCols.length > 1 && augmented) {
+                line[length++] = '|';
+                line[length++] = ' ';
+                line[length++] = ' ';
+            }
+
+            if (row == -1) {
+                length = pad(line, length, ELLIPSIS, ELLIPSIS.length(), widths[i]);
+            } else {
+                int numberLength = format(m.get(row, shownCols[i]), number);
+                System.arraycopy(number, 0, line, length, numberLength);
+                length = pad(line, length + numberLength, null, numberLength, widths[i]);
+            }
+        }
+
+        line[length++] = '|'; // right edge of matrix
+        line[length++] = '\n';
+
+        return length;
+    }
+
+    // writes text (if it isn't null) then enough spaces that the column is width + EXTRA_SPACES wide
+    private static int pad(char[] line, int length, String text, int textLength, int width) {
+
+        if (text != null) {
+            text.getChars(0, textLength, line, length);
+            length += textLength;
+        }
+        for (int i = textLength; i < width + EXTRA_SPACES; i++) {
+            line[length++] = ' ';
+        }
+
+        return length;
+    }
+
+    private static void writeLine(Appendable out, char[] line, int length) throws IOException {
+
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(line, 0, length);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(line, 0, length);
+        } else {
+            out.append(CharBuffer.wrap(line, 0, length));
+        }
+
+    }
+
+    // the indices that are shown, all of them unless skip is true, then only the first and last edge
+    private static int[] shownIndices(int count, int edge, boolean skip) {
+
+        int[] indices = new int[skip ? 2 * edge : count];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = !skip || i < edge ? i : count - 2 * edge + i;
+        }
+
+        return indices;
+    }
+
+    // writes the digits of a non-negative number at position start, returning the new length
+    private static int writeDigits(long number, char[] dest, int start) {
+
+        int digits = 1;
+        for (long n = number; n >= 10; n /= 10) {
+            digits++;
+        }
+
+        for (int i = start + digits - 1; i >= start; i--) {
+            dest[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+
+        return start + digits;
+    }
+
+    // formats values that Double.toString writes in scientific notation (or that aren't numbers),
+    // these are rare enough that going through a String is fine
+    private static int formatSlowly(double value, char[] dest) {
+
+        String displayVal = "" + value;
+        int point = displayVal.indexOf('.');
+
+        String shown;
+        if (point == -1) { // NaN and Infinity
+            shown = displayVal;
+        } else if (displayVal.length() - point - 1 > 2) { // 2 digit decimal
+            shown = displayVal.substring(0, point + 3);
+        } else {
+            shown = displayVal;
+        }
+
+        shown.getChars(0, shown.length(), dest, 0);
+        return shown.length();
+    }
+}
@@ -0,0 +1,50 @@
+// the place a Matrix keeps its values
+// implementations only store and operate on values, bounds checking is done by Matrix
+public interface MatrixStorage {
+
+    int getRows();
+
+    int getCols();
+
+    double get(int row, int col);
+
+    void set(int row, int col, double value);
+
+    // copies values into the row, values must be the same length as a row
+    void setRow(int row, double[] values);
+
+    // copies the row into dest, dest must be at least as long as a row
+    void copyRow(int row, double[] dest);
+
+    void swapRows(int row1, int row2);
+
+    // multiplies an entire row by a scalar, values that end up within Matrix.PRECISION of 0 are set to 0
+    void scaleRow(int row, double scalar);
+
+    // adds row1 times scalar to row2, values that end up within Matrix.PRECISION of 0 are set to 0
+    void addRows(int row1, int row2, double scalar);
+
+    // the first length values of the row times the first length values of x, for matrix-vector products
+    default double dotRow(int row, double[] x, int length) {
+        double sum = 0;
+        for (int col = 0; col < length; col++) {
+            sum += get(row, col) * x[col];
+        }
+        return sum;
+    }
+
+    // returns a storage with the same values that shares memory with this one for as long as possible,
+    // used for Matrix copies: after this call changes to either storage are never seen by the other
+    // this default copies every value, implementations that can share copy a row (or their array, or chunk) only once
+    // either side writes to it
+    default MatrixStorage share() {
+        NestedArrayStorage copy = new NestedArrayStorage(getRows(), getCols());
+        double[] rowValues = new double[getCols()];
+        for (int row = 0; row < getRows(); row++) {
+            copyRow(row, rowValues);
+            copy.setRow(row, rowValues);
+        }
+        return copy;
+    }
+
+}
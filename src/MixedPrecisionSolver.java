@@ -0,0 +1,347 @@
+// solves square systems by factoring a float copy of the matrix, which moves half the bytes of a double
+// factorization and fits twice as many values in each SIMD register, then recovers double accuracy
+// with iterative refinement: the residual b - Ax is calculated in double against the original values,
+// solved for a correction with the float factors, and added to x until the residual stops shrinking
+// if refinement doesn't converge (badly conditioned matrices, or values outside the range of a float)
+// the system is solved again with a full double LUDecomposition, which is only created if it is needed
+// a singular matrix always ends up there, and gets the IllegalStateException LUDecomposition.solve throws
+// Matrix.solveMixedPrecision is the usual way to use it on an augmented matrix
+public class MixedPrecisionSolver {
+
+    public static final int DEFAULT_MAX_ITERATIONS = 30;
+
+    private final int SIZE;
+    private final int blockSize;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    // the original values, used for residuals and for the double factorization if it is needed
+    private final double[][] values;
+
+    // float LU factors, stored the same way as LUDecomposition
+    private final float[][] lu;
+    private final int[] pivots;
+    private final boolean floatFailed;
+
+    private LUDecomposition doubleFactorization;
+
+    // factors a float copy of the square matrix, the matrix itself is never changed
+    public MixedPrecisionSolver(Matrix m) {
+        this(m, m.getCols());
+    }
+
+    // only uses the first cols columns of the matrix, used for the coefficient part of an augmented matrix
+    MixedPrecisionSolver(Matrix m, int cols) {
+
+        if (m.getRows() != cols) {
+            throw new IllegalArgumentException("Only a square matrix can be used to solve a system");
+        }
+
+        this.SIZE = cols;
+        this.blockSize = LUDecomposition.getDefaultBlockSize();
+        values = m.copyData(cols);
+
+        lu = new float[SIZE][SIZE];
+        pivots = new int[SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                lu[row][col] = (float) values[row][col];
+            }
+            pivots[row] = row;
+        }
+
+        floatFailed = !factor();
+
+    }
+
+    // solves the augmented matrix [A | b], which must have one more column than it has rows
+    // throws IllegalStateException if A is singular, see solve
+    public static Solution solveAugmented(Matrix augmented) {
+
+        if (augmented.getRows() != augmented.getCols() - 1) {
+            throw new IllegalArgumentException("The coefficient part of the matrix must be square to solve it");
+        }
+
+        double[] b = new double[augmented.getRows()];
+        for (int row = 0; row < b.length; row++) {
+            b[row] = augmented.get(row, augmented.getCols() - 1);
+        }
+
+        return new MixedPrecisionSolver(augmented, augmented.getCols() - 1).solve(b);
+    }
+
+    // SETTINGS
+
+    public void setMaxIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("There must be at least 1 refinement iteration");
+        }
+        maxIterations = iterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    // ACCESSORS
+
+    public int getSize() {
+        return SIZE;
+    }
+
+    // whether the float factorization hit a pivot too small to use, in which case every solve uses doubles
+    public boolean isFloatFactorizationFailed() {
+        return floatFailed;
+    }
+
+    // solves Ax = b, refining the float solution until it is as accurate as a double solve
+    // throws IllegalStateException if the matrix is singular, since the float factors can't be used then
+    // and the double fallback has no unique solution to give
+    public Solution solve(double[] b) {
+
+        if (b.length != SIZE) {
+            throw new IllegalArgumentException("The right hand side must have the same number of rows as the matrix");
+        }
+
+        int iterations = 0;
+        if (!floatFailed) {
+            double[] x = floatSolve(b);
+            double[] residual = new double[SIZE];
+            double aNorm = infinityNorm(values);
+            double bNorm = infinityNorm(b);
+
+            // converged once the backward error is at the level of double rounding error
+            double tolerance = Math.ulp(1.0) * Math.sqrt(SIZE);
+            double previous = Double.POSITIVE_INFINITY;
+
+            while (true) {
+                double error = backwardError(x, b, residual, aNorm, bNorm);
+                if (error <= tolerance) {
+                    return new Solution(x, iterations, error, false);
+                }
+
+                // stalled or growing, float precision isn't enough for this matrix
+                if (!(error < previous / 2) || iterations == maxIterations) break;
+                previous = error;
+                iterations++;
+
+                double[] correction = floatSolve(residual);
+                for (int i = 0; i < SIZE; i++) {
+                    x[i] += correction[i];
+                }
+            }
+        }
+
+        // fall back to a full double solve, which throws IllegalStateException if the matrix is singular
+        if (doubleFactorization == null) {
+            double[][] copy = new double[SIZE][];
+            for (int row = 0; row < SIZE; row++) {
+                copy[row] = values[row].clone();
+            }
+            doubleFactorization = new LUDecomposition(copy, SIZE, blockSize);
+        }
+
+        double[] x = doubleFactorization.solve(b);
+        double error = backwardError(x, b, new double[SIZE], infinityNorm(values), infinityNorm(b));
+        return new Solution(x, iterations, error, true);
+    }
+
+    // the result of a solve
+    public static class Solution {
+
+        private final double[] x;
+        private final int iterations;
+        private final double residual;
+        private final boolean fallback;
+
+        Solution(double[] x, int iterations, double residual, boolean fallback) {
+            this.x = x;
+            this.iterations = iterations;
+            this.residual = residual;
+            this.fallback = fallback;
+        }
+
+        public double[] getX() {
+            return x;
+        }
+
+        // number of refinement steps taken after the first float solve, including any before falling back
+        public int getIterations() {
+            return iterations;
+        }
+
+        // normwise backward error of x: |b - Ax| / (|A| |x| + |b|) using infinity norms
+        public double getResidual() {
+            return residual;
+        }
+
+        // whether refinement didn't converge and x came from a double factorization instead
+        public boolean isFallback() {
+            return fallback;
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    // fills residual with b - Ax, calculated in double, and returns the normwise backward error
+    private double backwardError(double[] x, double[] b, double[] residual, double aNorm, double bNorm) {
+
+        double residualNorm = 0;
+        for (int row = 0; row < SIZE; row++) {
+            double[] rowArr = values[row];
+            double value = b[row];
+            for (int col = 0; col < SIZE; col++) {
+                value -= rowArr[col] * x[col];
+            }
+            residual[row] = value;
+            residualNorm = Math.max(residualNorm, Math.abs(value));
+        }
+
+        double xNorm = infinityNorm(x);
+        double scale = aNorm * xNorm + bNorm;
+        return scale == 0 ? residualNorm : residualNorm / scale;
+    }
+
+    private static double infinityNorm(double[] vector) {
+        double norm = 0;
+        for (double value : vector) {
+            norm = Math.max(norm, Math.abs(value));
+        }
+        return norm;
+    }
+
+    private static double infinityNorm(double[][] matrix) {
+        double norm = 0;
+        for (double[] row : matrix) {
+            double sum = 0;
+            for (double value : row) {
+                sum += Math.abs(value);
+            }
+            norm = Math.max(norm, sum);
+        }
+        return norm;
+    }
+
+    // forward and back substitution with the float factors, accumulated in double
+    private double[] floatSolve(double[] b) {
+
+        double[] x = new double[SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            double value = b[pivots[row]];
+            float[] rowArr = lu[row];
+            for (int col = 0; col < row; col++) {
+                value -= rowArr[col] * x[col];
+            }
+            x[row] = value;
+        }
+
+        for (int row = SIZE - 1; row >= 0; row--) {
+            double value = x[row];
+            float[] rowArr = lu[row];
+            for (int col = row + 1; col < SIZE; col++) {
+                value -= rowArr[col] * x[col];
+            }
+            x[row] = value / rowArr[row];
+        }
+
+        return x;
+    }
+
+    // the same blocked factorization as LUDecomposition, on floats
+    // returns false if a pivot is too small, or the values didn't fit in a float
+    private boolean factor() {
+
+        // like LUDecomposition.pivotTolerance, but for float rounding error
+        float largest = 0;
+        for (float[] rowArr : lu) {
+            for (float value : rowArr) {
+                largest = Math.max(largest, Math.abs(value));
+            }
+        }
+        float tolerance = SIZE * Math.ulp(1f) * largest;
+
+        for (int panelStart = 0; panelStart < SIZE; panelStart += blockSize) {
+            int panelEnd = Math.min(panelStart + blockSize, SIZE);
+
+            if (!factorPanel(panelStart, panelEnd, tolerance)) return false;
+
+            // U12 = L11^-1 A12
+            for (int row = panelStart + 1; row < panelEnd; row++) {
+                float[] rowArr = lu[row];
+                for (int k = panelStart; k < row; k++) {
+                    float multiplier = rowArr[k];
+                    if (multiplier != 0) {
+                        float[] upperRow = lu[k];
+                        for (int c = panelEnd; c < SIZE; c++) {
+                            rowArr[c] -= multiplier * upperRow[c];
+                        }
+                    }
+                }
+            }
+
+            // A22 -= L21 U12, a tile at a time
+            for (int colStart = panelEnd; colStart < SIZE; colStart += blockSize) {
+                int colEnd = Math.min(colStart + blockSize, SIZE);
+                for (int row = panelEnd; row < SIZE; row++) {
+                    float[] rowArr = lu[row];
+                    for (int k = panelStart; k < panelEnd; k++) {
+                        float multiplier = rowArr[k];
+                        if (multiplier != 0) {
+                            float[] upperRow = lu[k];
+                            for (int c = colStart; c < colEnd; c++) {
+                                rowArr[c] -= multiplier * upperRow[c];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean factorPanel(int panelStart, int panelEnd, float tolerance) {
+
+        for (int col = panelStart; col < panelEnd; col++) {
+
+            int pivotRow = col;
+            float pivotMagnitude = Math.abs(lu[col][col]);
+            for (int row = col + 1; row < SIZE; row++) {
+                float magnitude = Math.abs(lu[row][col]);
+                if (magnitude > pivotMagnitude) {
+                    pivotMagnitude = magnitude;
+                    pivotRow = row;
+                }
+            }
+
+            // also catches infinite and NaN pivots from values too large for a float
+            if (!(pivotMagnitude > tolerance) || Float.isInfinite(pivotMagnitude)) {
+                return false;
+            }
+
+            if (pivotRow != col) {
+                float[] tempRow = lu[pivotRow];
+                lu[pivotRow] = lu[col];
+                lu[col] = tempRow;
+
+                int tempPivot = pivots[pivotRow];
+                pivots[pivotRow] = pivots[col];
+                pivots[col] = tempPivot;
+            }
+
+            float[] pivotRowArr = lu[col];
+            float pivotValue = pivotRowArr[col];
+            for (int row = col + 1; row < SIZE; row++) {
+                float[] rowArr = lu[row];
+                float multiplier = rowArr[col] / pivotValue;
+                rowArr[col] = multiplier;
+                if (multiplier != 0) {
+                    for (int c = col + 1; c < panelEnd; c++) {
+                        rowArr[c] -= multiplier * pivotRowArr[c];
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+// stores each row as its own array, row swaps just swap the array references
+// rows can be shared with copies of the matrix (see share), a shared row is only copied the first time it is written
+public class NestedArrayStorage implements MatrixStorage {
+
+    private final int ROWS;
+    private final int COLS;
+
+    private final double[][] data;
+
+    // shared[row] is true while data[row] may also belong to another storage, null until share is first called
+    // only the thread writing a row touches its flag, so rows can still be updated from several threads at once
+    private boolean[] shared;
+
+    public NestedArrayStorage(int rows, int cols) {
+
+        this.ROWS = rows;
+        this.COLS = cols;
+
+        data = new double[ROWS][COLS];
+
+    }
+
+    // a storage using the same row arrays as source, every one of them shared
+    private NestedArrayStorage(NestedArrayStorage source) {
+
+        this.ROWS = source.ROWS;
+        this.COLS = source.COLS;
+
+        data = source.data.clone();
+        shared = new boolean[ROWS];
+        Arrays.fill(shared, true);
+
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    public double get(int row, int col) {
+        return data[row][col];
+    }
+
+    public void copyRow(int row, double[] dest) {
+        System.arraycopy(data[row], 0, dest, 0, COLS);
+    }
+
+    public double dotRow(int row, double[] x, int length) {
+        return RowKernels.dot(data[row], 0, x, length);
+    }
+
+    // only copies the row references, O(rows) instead of O(rows * cols)
+    public NestedArrayStorage share() {
+        if (shared == null) {
+            shared = new boolean[ROWS];
+        }
+        Arrays.fill(shared, true);
+        return new NestedArrayStorage(this);
+    }
+
+    // MUTATORS
+
+    public void set(int row, int col, double value) {
+        ownRow(row)[col] = value;
+    }
+
+    public void setRow(int row, double[] values) {
+        data[row] = Arrays.copyOf(values, COLS);
+        if (shared != null) {
+            shared[row] = false;
+        }
+    }
+
+    public void swapRows(int row1, int row2) {
+        SolverMetrics.count(SolverMetrics.Counter.ROW_SWAPS, 1);
+        double[] temp = data[row1];
+        data[row1] = data[row2];
+        data[row2] = temp;
+        if (shared != null) {
+            boolean tempShared = shared[row1];
+            shared[row1] = shared[row2];
+            shared[row2] = tempShared;
+        }
+    }
+
+    public void scaleRow(int row, double scalar) {
+        RowKernels.scale(ownRow(row), 0, COLS, scalar);
+    }
+
+    public void addRows(int row1, int row2, double scalar) {
+        RowKernels.axpy(data[row1], 0, ownRow(row2), 0, COLS, scalar);
+    }
+
+    // HELPER FUNCTIONS
+
+    // returns the row's array, copying it first if another storage may still be using it
+    private double[] ownRow(int row) {
+        if (shared != null && shared[row]) {
+            data[row] = data[row].clone();
+            shared[row] = false;
+        }
+        return data[row];
+    }
+}
@@ -0,0 +1,376 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// stores the values outside of the Java heap, so matrices far larger than the heap don't add to garbage
+// collection work, either in freshly allocated native memory or mapped straight from a file
+// a mapped file uses MatrixLoader's binary (.msb) format, so a matrix written through this storage can be
+// reopened later, by open or MatrixLoader.readBinary, without parsing anything
+// a single buffer can only hold 2GB, so the rows are split across as many buffers as needed,
+// and rows are really moved by swapRows (no permutation) so a mapped file always holds the current matrix
+// the chunks can be shared with copies of the matrix (see share), and a shared chunk is only copied by the first
+// write to it, a chunk at a time
+public class OffHeapStorage implements MatrixStorage, Closeable {
+
+    // most bytes that are put in one buffer, a whole number of rows always fits in a chunk
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    private final int ROWS;
+    private final int COLS;
+
+    private final int rowsPerChunk;
+    private final Chunk[] chunks;
+
+    // the mapped buffers behind the chunks, null when the memory was allocated instead of mapped
+    private final MappedByteBuffer[] mapped;
+
+    // the values of the mapped buffers, which keep getting this storage's writes even once they are shared
+    private final DoubleBuffer[] mappedValues;
+
+    // rows are copied into these to be operated on with RowKernels, one pair for each thread
+    // since GaussianElimination can update several rows at once
+    private final ThreadLocal<double[][]> rowBuffers;
+
+    private OffHeapStorage(int rows, int cols, MappedByteBuffer[] mapped, ByteBuffer[] buffers) {
+
+        this.ROWS = rows;
+        this.COLS = cols;
+        this.rowsPerChunk = rowsPerChunk(cols);
+        this.mapped = mapped;
+
+        chunks = new Chunk[buffers.length];
+        mappedValues = mapped == null ? null : new DoubleBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            chunks[i] = new Chunk(buffers[i].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer(), mapped != null);
+            if (mappedValues != null) {
+                mappedValues[i] = chunks[i].values;
+            }
+        }
+
+        rowBuffers = ThreadLocal.withInitial(() -> new double[2][COLS]);
+
+    }
+
+    // a storage using the same chunks as source, which are shared by both
+    // it is never mapped itself, so its writes only ever go to memory of its own
+    private OffHeapStorage(OffHeapStorage source) {
+
+        this.ROWS = source.ROWS;
+        this.COLS = source.COLS;
+        this.rowsPerChunk = source.rowsPerChunk;
+        this.mapped = null;
+        this.mappedValues = null;
+
+        chunks = source.chunks.clone();
+
+        rowBuffers = ThreadLocal.withInitial(() -> new double[2][COLS]);
+
+    }
+
+    // allocates native memory for a matrix, which is freed once the storage is garbage collected
+    public static OffHeapStorage allocate(int rows, int cols) {
+
+        checkSize(rows, cols);
+
+        ByteBuffer[] buffers = new ByteBuffer[chunkCount(rows, cols)];
+        int rowsPerChunk = rowsPerChunk(cols);
+        for (int i = 0; i < buffers.length; i++) {
+            int chunkRows = Math.min(rowsPerChunk, rows - i * rowsPerChunk);
+            buffers[i] = ByteBuffer.allocateDirect(chunkRows * cols * Double.BYTES);
+        }
+
+        return new OffHeapStorage(rows, cols, null, buffers);
+    }
+
+    // creates (or replaces) a binary matrix file of the given size, filled with 0s, and maps it
+    public static OffHeapStorage create(Path path, int rows, int cols) throws IOException {
+
+        checkSize(rows, cols);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer header = ByteBuffer.allocate(MatrixLoader.BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MatrixLoader.BINARY_MAGIC).putInt(rows).putInt(cols).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            return map(channel, rows, cols);
+        }
+    }
+
+    // maps an existing binary matrix file, changes to the storage are written back to the file
+    public static OffHeapStorage open(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            ByteBuffer header = ByteBuffer.allocate(MatrixLoader.BINARY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IllegalArgumentException("The file is too short to be a binary matrix");
+                }
+            }
+            header.flip();
+
+            byte[] magic = new byte[MatrixLoader.BINARY_MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MatrixLoader.BINARY_MAGIC)) {
+                throw new IllegalArgumentException("The file is not a binary matrix");
+            }
+
+            int rows = header.getInt();
+            int cols = header.getInt();
+            if (rows < 0 || cols < 0 ||
+                    channel.size() < MatrixLoader.BINARY_HEADER_SIZE + (long) rows * cols * Double.BYTES) {
+                throw new IllegalArgumentException("The size of the file does not match its header");
+            }
+
+            return map(channel, rows, cols);
+        }
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    // reads of a mapped storage's chunk check its lock afterwards and read again if the storage swapped the values
+    // out meanwhile (see ownChunk), so a shared chunk never shows another storage's writes
+    public double get(int row, int col) {
+
+        Chunk chunk = chunks[row / rowsPerChunk];
+        int index = rowOffset(row) + col;
+        if (!chunk.swappable) return chunk.values.get(index);
+
+        long stamp = chunk.lock.tryOptimisticRead();
+        double value = chunk.values.get(index);
+        if (!chunk.lock.validate(stamp)) {
+            stamp = chunk.lock.readLock();
+            try {
+                value = chunk.values.get(index);
+            } finally {
+                chunk.lock.unlockRead(stamp);
+            }
+        }
+
+        return value;
+    }
+
+    public void copyRow(int row, double[] dest) {
+
+        Chunk chunk = chunks[row / rowsPerChunk];
+        int offset = rowOffset(row);
+        if (!chunk.swappable) {
+            chunk.values.get(offset, dest, 0, COLS);
+            return;
+        }
+
+        long stamp = chunk.lock.tryOptimisticRead();
+        chunk.values.get(offset, dest, 0, COLS);
+        if (!chunk.lock.validate(stamp)) {
+            stamp = chunk.lock.readLock();
+            try {
+                chunk.values.get(offset, dest, 0, COLS);
+            } finally {
+                chunk.lock.unlockRead(stamp);
+            }
+        }
+
+    }
+
+    public double dotRow(int row, double[] x, int length) {
+        double[] values = rowBuffers.get()[0];
+        copyRow(row, values);
+        double sum = 0;
+        for (int col = 0; col < length; col++) {
+            sum += values[col] * x[col];
+        }
+        return sum;
+    }
+
+    // only copies the chunk references, O(chunks) instead of O(rows * cols)
+    public synchronized OffHeapStorage share() {
+        for (Chunk chunk : chunks) {
+            chunk.shared = true;
+        }
+        return new OffHeapStorage(this);
+    }
+
+    // MUTATORS
+
+    public void set(int row, int col, double value) {
+        writableChunk(row / rowsPerChunk).put(rowOffset(row) + col, value);
+    }
+
+    public void setRow(int row, double[] values) {
+        writableChunk(row / rowsPerChunk).put(rowOffset(row), values, 0, COLS);
+    }
+
+    public void swapRows(int row1, int row2) {
+
+        SolverMetrics.count(SolverMetrics.Counter.ROW_SWAPS, 1);
+
+        double[][] buffers = rowBuffers.get();
+        copyRow(row1, buffers[0]);
+        copyRow(row2, buffers[1]);
+        setRow(row1, buffers[1]);
+        setRow(row2, buffers[0]);
+
+    }
+
+    public void scaleRow(int row, double scalar) {
+
+        double[] values = rowBuffers.get()[0];
+        copyRow(row, values);
+        RowKernels.scale(values, 0, COLS, scalar);
+        setRow(row, values);
+
+    }
+
+    public void addRows(int row1, int row2, double scalar) {
+
+        double[][] buffers = rowBuffers.get();
+        copyRow(row1, buffers[0]);
+        copyRow(row2, buffers[1]);
+        RowKernels.axpy(buffers[0], 0, buffers[1], 0, COLS, scalar);
+        setRow(row2, buffers[1]);
+
+    }
+
+    // writes any changes to a mapped file out to disk, does nothing for allocated memory
+    public void flush() {
+        if (mapped != null) {
+            for (MappedByteBuffer buffer : mapped) {
+                buffer.force();
+            }
+        }
+    }
+
+    // flushes a mapped file, the memory itself is released once the storage is garbage collected
+    public void close() {
+        flush();
+    }
+
+    // HELPER FUNCTIONS
+
+    private static OffHeapStorage map(FileChannel channel, int rows, int cols) throws IOException {
+
+        int rowsPerChunk = rowsPerChunk(cols);
+        long rowBytes = (long) cols * Double.BYTES;
+
+        MappedByteBuffer[] buffers = new MappedByteBuffer[chunkCount(rows, cols)];
+        for (int i = 0; i < buffers.length; i++) {
+            long startRow = (long) i * rowsPerChunk;
+            int chunkRows = (int) Math.min(rowsPerChunk, rows - startRow);
+            // mapping past the end of the file grows it, which is how create sizes a new file
+            buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    MatrixLoader.BINARY_HEADER_SIZE + startRow * rowBytes, chunkRows * rowBytes);
+        }
+
+        return new OffHeapStorage(rows, cols, buffers, buffers);
+    }
+
+    private static void checkSize(int rows, int cols) {
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("The matrix cannot have a dimension of 0");
+        }
+        if ((long) cols * Double.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A row of the matrix is too large to be stored in a single buffer");
+        }
+    }
+
+    private static int rowsPerChunk(int cols) {
+        return (int) Math.max(1, CHUNK_SIZE / Math.max(1, (long) cols * Double.BYTES));
+    }
+
+    private static int chunkCount(int rows, int cols) {
+        int rowsPerChunk = rowsPerChunk(cols);
+        return (int) (((long) rows + rowsPerChunk - 1) / rowsPerChunk);
+    }
+
+    // position of the start of a row within its chunk
+    private int rowOffset(int row) {
+        return (row % rowsPerChunk) * COLS;
+    }
+
+    // returns the chunk's values, taking it over first if another storage may still be using it
+    private DoubleBuffer writableChunk(int index) {
+        Chunk chunk = chunks[index];
+        return chunk.shared ? ownChunk(index) : chunk.values;
+    }
+
+    private synchronized DoubleBuffer ownChunk(int index) {
+
+        Chunk chunk = chunks[index];
+        if (!chunk.shared) return chunk.values;
+
+        if (mappedValues != null && chunk.values == mappedValues[index]) {
+            // the file has to keep getting this storage's writes, so the storages sharing the chunk are
+            // given a copy of it instead, under the write lock so none of their reads can overlap the writes
+            DoubleBuffer snapshot = copyOf(chunk.values);
+            long stamp = chunk.lock.writeLock();
+            chunk.values = snapshot;
+            chunk.lock.unlockWrite(stamp);
+            chunks[index] = new Chunk(mappedValues[index], true);
+        } else {
+            // a mapped storage could swap the values out while they're copied, so it's held off until done
+            long stamp = chunk.lock.readLock();
+            try {
+                chunks[index] = new Chunk(copyOf(chunk.values), false);
+            } finally {
+                chunk.lock.unlockRead(stamp);
+            }
+        }
+
+        return chunks[index].values;
+    }
+
+    // a copy of the values in newly allocated native memory
+    private static DoubleBuffer copyOf(DoubleBuffer values) {
+        DoubleBuffer source = values.duplicate();
+        source.clear();
+        DoubleBuffer copy = ByteBuffer.allocateDirect(source.capacity() * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        copy.put(source);
+        return copy;
+    }
+
+    // one buffer of rows, which can be used by several storages at once
+    private static final class Chunk {
+
+        // only replaced when a mapped storage hands the other storages a copy, under the write lock (see ownChunk)
+        DoubleBuffer values;
+
+        // whether the values are a mapped storage's file, the only ones that can be swapped out
+        final boolean swappable;
+
+        // true once the chunk may belong to more than one storage, it is never cleared since the
+        // other storages aren't tracked, so the last one left still copies the chunk when it first writes
+        volatile boolean shared;
+
+        final StampedLock lock = new StampedLock();
+
+        Chunk(DoubleBuffer values, boolean swappable) {
+            this.values = values;
+            this.swappable = swappable;
+        }
+    }
+}
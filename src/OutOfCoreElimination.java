@@ -0,0 +1,653 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// blocked LU elimination of a matrix that is kept on disk, for matrices too large to fit in memory
+// the matrix is split into square tiles stored in a working directory, and only a bounded number of tiles
+// (plus the panel being factored) are held in memory at once, the rest are read and written as needed
+// each step factors one column of tiles (the panel) and then updates every tile to the right of it,
+// while the trailing update runs the next panel is loaded on a background thread
+// like GaussianElimination, a column without a pivot is skipped and its pivot row stays for the next column,
+// so rank deficient and inconsistent systems are eliminated on disk as well, and a step's pivots can start
+// part way down a tile
+// after every step the progress is saved to a checkpoint, so a solve that is interrupted can be resumed
+// from the last completed step by creating an OutOfCoreElimination on the same directory again
+// tiles are written to one of two files, alternating each step, so the files a checkpoint refers to are
+// never overwritten by the step after it, this takes twice the size of the matrix in disk space
+public class OutOfCoreElimination implements Closeable {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private static final byte[] CHECKPOINT_MAGIC = {'O', 'O', 'C', '2'};
+
+    // everything but the tile locations, which follow it
+    private static final int CHECKPOINT_SIZE = 4 + 5 * 4 + 8 + 8 + 8 + 1;
+    private static final String CHECKPOINT_NAME = "checkpoint";
+    private static final String[] TILE_FILE_NAMES = {"tiles0", "tiles1"};
+
+    private final int ROWS;
+    private final int COLS;
+    private final int tileSize;
+    private final int tileRows;
+    private final int tileCols;
+    private final int steps;
+    private final long hash;
+
+    private final Path directory;
+    private final FileChannel[] files = new FileChannel[2];
+    private final TileCache cache;
+
+    // which of the two files holds the latest version of each tile, saved with every checkpoint
+    private final byte[] location;
+
+    // the next panel is loaded on this thread while the current trailing update runs
+    private final ExecutorService prefetcher;
+
+    private int completedSteps;
+    private int pivotSign;
+    private double pivotProduct;
+    private boolean singular;
+
+    // number of pivots found so far, the next pivot goes in this row
+    private int rank;
+
+    // largest value a pivot can have and still only be rounding error (see LUDecomposition.pivotTolerance)
+    private double tolerance;
+
+    // uses the default tile size, with enough room in the cache for two columns of tiles
+    public OutOfCoreElimination(Matrix m, Path directory) throws IOException {
+        this(m, directory, DEFAULT_TILE_SIZE,
+                2 * Math.max(1, (m.getRows() + DEFAULT_TILE_SIZE - 1) / DEFAULT_TILE_SIZE));
+    }
+
+    // resumes the elimination of m saved in directory, or starts a new one if there is no checkpoint there
+    // for the same matrix, tileSize values square tiles are used and cacheTiles of them are kept in memory
+    // the cache should hold at least a full column of tiles, it is allowed to grow past its size otherwise
+    public OutOfCoreElimination(Matrix m, Path directory, int tileSize, int cacheTiles) throws IOException {
+
+        if (tileSize < 1 || (long) tileSize * tileSize * Double.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid tile size: " + tileSize);
+        }
+        if (cacheTiles < 1) {
+            throw new IllegalArgumentException("The tile cache must be able to hold at least 1 tile");
+        }
+
+        this.ROWS = m.getRows();
+        this.COLS = m.getCols();
+        this.tileSize = tileSize;
+        this.tileRows = (ROWS + tileSize - 1) / tileSize;
+        this.tileCols = (COLS + tileSize - 1) / tileSize;
+        this.steps = tileCols;
+        this.hash = m.contentHash();
+        this.directory = directory;
+
+        location = new byte[tileRows * tileCols];
+        cache = new TileCache(cacheTiles);
+
+        Files.createDirectories(directory);
+        for (int i = 0; i < files.length; i++) {
+            files[i] = FileChannel.open(directory.resolve(TILE_FILE_NAMES[i]), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        if (!readCheckpoint()) {
+            importMatrix(m);
+        }
+
+        prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tile-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+    // ACCESSORS
+
+    public int getCompletedSteps() {
+        return completedSteps;
+    }
+
+    // one step per column of tiles, fewer are run if every row has a pivot before the last column
+    public int getSteps() {
+        return steps;
+    }
+
+    public boolean isFinished() {
+        return completedSteps == steps || rank == ROWS;
+    }
+
+    // whether a column had no pivot while there were still rows left, for a square matrix that makes
+    // the determinant 0 (a wide matrix can still have a pivot in every row)
+    public boolean isSingular() {
+        return singular;
+    }
+
+    // number of rows with a pivot so far, which is the rank of the matrix once finished
+    public int getRank() {
+        return rank;
+    }
+
+    public double determinant() throws IOException {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrix must be square to find the determinant");
+        }
+
+        // the determinant is known to be 0 as soon as a column has no pivot, so the rest of the steps aren't needed
+        run(true);
+        return singular ? 0 : pivotSign * pivotProduct;
+    }
+
+    // writes the echelon form (U of the factorization, with a 0 row for every row without a pivot) into storage,
+    // which must be the same size
+    public void copyUpperInto(MatrixStorage storage) throws IOException {
+
+        run();
+
+        double[] row = new double[COLS];
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            int startRow = tileRow * tileSize;
+            int rows = Math.min(tileSize, ROWS - startRow);
+
+            for (int r = 0; r < rows; r++) {
+                for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+                    Tile tile = cache.pin(tileRow, tileCol);
+                    int width = Math.min(tileSize, COLS - tileCol * tileSize);
+                    System.arraycopy(tile.values, r * tileSize, row, tileCol * tileSize, width);
+                    cache.unpin(tile);
+                }
+                storage.setRow(startRow + r, row);
+            }
+        }
+    }
+
+    // runs every step that hasn't been completed yet
+    public void run() throws IOException {
+        run(false);
+    }
+
+    // deletes the tile files and checkpoint, after which this can't be used
+    public void delete() throws IOException {
+
+        close();
+        for (String name : TILE_FILE_NAMES) {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_NAME));
+
+    }
+
+    public void close() throws IOException {
+
+        prefetcher.shutdownNow();
+        for (FileChannel file : files) {
+            file.close();
+        }
+
+    }
+
+    // HELPER FUNCTIONS
+
+    // runs steps until finished, or until a column without a pivot is found if stopIfSingular is true
+    private void run(boolean stopIfSingular) throws IOException {
+
+        Future<double[][]> nextPanel = null;
+        while (!isFinished() && !(stopIfSingular && singular)) {
+            double[][] panel = nextPanel != null ? waitFor(nextPanel) : loadPanel(completedSteps, rank);
+            nextPanel = step(completedSteps, panel);
+        }
+
+    }
+
+    // factors the panel of tile column k, then updates the tiles to its right
+    // returns the load of the next panel, which is started as soon as that column is up to date
+    private Future<double[][]> step(int k, double[][] panel) throws IOException {
+
+        int panelStart = k * tileSize;
+        int width = Math.min(tileSize, COLS - panelStart); // columns of the panel
+        int rowStart = rank; // the pivots of this step go in the rows from here on
+        int firstTileRow = rowStart / tileSize; // the panel's first tile row
+        int rowBase = firstTileRow * tileSize; // first row of panel[0]
+        int[] pivotCols = new int[width];
+        int[] swaps = new int[width];
+        cache.writeTo((k + 1) % 2);
+
+        int pivots = factorPanel(panel, rowBase, width, pivotCols, swaps);
+        rank = rowStart + pivots;
+
+        // only U is kept, so in the panel's columns every pivot row is 0 left of its pivot and every row below
+        // the pivots is 0, rows above rowStart were finished by earlier steps and stay as they are
+        // the pivots themselves are never snapped (like LUDecomposition.copyUpperInto), however small they are
+        for (int i = 0; i < panel.length; i++) {
+            Tile tile = cache.pin(firstTileRow + i, k);
+            for (int r = 0; r < tileSize; r++) {
+                int row = rowBase + i * tileSize + r;
+                int lead = row < rowStart ? 0 : row < rank ? pivotCols[row - rowStart] : tileSize;
+                for (int c = 0; c < tileSize; c++) {
+                    double value = panel[i][r * tileSize + c];
+                    tile.values[r * tileSize + c] = c < lead ||
+                            (row >= rowStart && c != lead && Math.abs(value) < Matrix.PRECISION) ? 0 : value;
+                }
+            }
+            cache.markDirty(tile);
+            cache.unpin(tile);
+        }
+
+        // every tile to the right is rewritten even without pivots, so no tile still being worked on is left in
+        // the file the next step writes to
+        int nextRank = rank;
+        Future<double[][]> nextPanel = null;
+        for (int tileCol = k + 1; tileCol < tileCols; tileCol++) {
+            updateColumn(panel, tileCol, rowBase, rowStart, pivots, pivotCols, swaps);
+            if (tileCol == k + 1 && k + 1 < steps && nextRank < ROWS) {
+                nextPanel = prefetcher.submit(() -> loadPanel(k + 1, nextRank));
+            }
+        }
+
+        // the next panel was copied from the cache, so the checkpoint can be written while it loads
+        if (nextPanel != null) waitFor(nextPanel);
+        cache.flush();
+        for (FileChannel file : files) {
+            file.force(false);
+        }
+
+        completedSteps = k + 1;
+        writeCheckpoint();
+
+        return nextPanel;
+    }
+
+    // LU factorization of the panel with partial pivoting, panel[i] holds the rows from rowBase + i * tileSize
+    // the pivots go in the rows from rank on, a column without a pivot larger than tolerance is skipped the way
+    // GaussianElimination does, which makes the matrix singular
+    // multipliers are left below each pivot, and pivotCols and swaps get each pivot's column and the row
+    // swapped into place for it
+    // returns the number of pivots found
+    private int factorPanel(double[][] panel, int rowBase, int width, int[] pivotCols, int[] swaps) {
+
+        int pivots = 0;
+        for (int c = 0; c < width && rank + pivots < ROWS; c++) {
+            int pivotRow = rank + pivots;
+
+            int best = pivotRow;
+            double bestMagnitude = Math.abs(panelValue(panel, rowBase, pivotRow, c));
+            for (int row = pivotRow + 1; row < ROWS; row++) {
+                double magnitude = Math.abs(panelValue(panel, rowBase, row, c));
+                if (magnitude > bestMagnitude) {
+                    bestMagnitude = magnitude;
+                    best = row;
+                }
+            }
+
+            if (bestMagnitude <= tolerance) {
+                singular = true;
+                continue;
+            }
+
+            pivotCols[pivots] = c;
+            swaps[pivots] = best;
+            if (best != pivotRow) {
+                swapRows(panel, rowBase, best, pivotRow);
+                pivotSign = -pivotSign;
+                SolverMetrics.count(SolverMetrics.Counter.ROW_SWAPS, 1);
+            }
+
+            double[] pivotTile = panel[(pivotRow - rowBase) / tileSize];
+            int pivotOffset = ((pivotRow - rowBase) % tileSize) * tileSize;
+            double pivot = pivotTile[pivotOffset + c];
+            pivotProduct *= pivot;
+
+            for (int row = pivotRow + 1; row < ROWS; row++) {
+                double[] tile = panel[(row - rowBase) / tileSize];
+                int offset = ((row - rowBase) % tileSize) * tileSize;
+                double multiplier = tile[offset + c] / pivot;
+                tile[offset + c] = multiplier;
+                if (multiplier != 0) {
+                    for (int col = c + 1; col < width; col++) {
+                        tile[offset + col] -= multiplier * pivotTile[pivotOffset + col];
+                    }
+                }
+            }
+
+            pivots++;
+        }
+
+        return pivots;
+    }
+
+    // brings tile column tileCol up to date with a panel: the panel's row swaps, then each row from rowStart on
+    // has the pivot rows above it subtracted with the multipliers left in the panel, top to bottom,
+    // which is U12 = L11^-1 A12 for the pivot rows and A22 -= L21 U12 for the rows below them
+    private void updateColumn(double[][] panel, int tileCol, int rowBase, int rowStart, int pivots,
+                              int[] pivotCols, int[] swaps) throws IOException {
+
+        int firstTileRow = rowBase / tileSize;
+        Tile[] column = new Tile[tileRows - firstTileRow];
+        double[][] values = new double[column.length][];
+        for (int i = 0; i < column.length; i++) {
+            column[i] = cache.pin(firstTileRow + i, tileCol);
+            values[i] = column[i].values;
+        }
+
+        for (int i = 0; i < pivots; i++) {
+            if (swaps[i] != rowStart + i) {
+                swapRows(values, rowBase, swaps[i], rowStart + i);
+            }
+        }
+
+        for (int row = rowStart + 1; row < ROWS; row++) {
+            int tileIndex = (row - rowBase) / tileSize;
+            int offset = ((row - rowBase) % tileSize) * tileSize;
+            double[] multipliers = panel[tileIndex];
+            int above = Math.min(pivots, row - rowStart);
+            for (int j = 0; j < above; j++) {
+                double multiplier = multipliers[offset + pivotCols[j]];
+                if (multiplier != 0) {
+                    int source = rowStart + j - rowBase;
+                    subtractScaledRow(values[tileIndex], offset, values[source / tileSize],
+                            (source % tileSize) * tileSize, multiplier);
+                }
+            }
+        }
+
+        if (SolverMetrics.isEnabled()) {
+            long trailingRows = Math.max(0, ROWS - rowStart - pivots);
+            SolverMetrics.count(SolverMetrics.Counter.FLOPS,
+                    (long) pivots * pivots * tileSize + 2L * trailingRows * pivots * tileSize);
+        }
+
+        // the pivot rows are final, so they are snapped to 0 like every other echelon form
+        for (int row = rowStart - rowBase; row < rowStart + pivots - rowBase; row++) {
+            RowKernels.snapToZero(values[row / tileSize], (row % tileSize) * tileSize, tileSize);
+        }
+
+        for (Tile tile : column) {
+            cache.markDirty(tile);
+            cache.unpin(tile);
+        }
+
+    }
+
+    // copies the tiles of column k, from the tile row holding rowStart down, out of the cache
+    private double[][] loadPanel(int k, int rowStart) throws IOException {
+
+        int firstTileRow = rowStart / tileSize;
+        double[][] panel = new double[tileRows - firstTileRow][];
+        for (int i = 0; i < panel.length; i++) {
+            Tile tile = cache.pin(firstTileRow + i, k);
+            panel[i] = tile.values.clone();
+            cache.unpin(tile);
+        }
+
+        return panel;
+    }
+
+    private double panelValue(double[][] panel, int rowBase, int row, int col) {
+        return panel[(row - rowBase) / tileSize][((row - rowBase) % tileSize) * tileSize + col];
+    }
+
+    // swaps two rows of a column of tiles whose first tile starts at rowBase
+    private void swapRows(double[][] tiles, int rowBase, int row1, int row2) {
+
+        double[] tile1 = tiles[(row1 - rowBase) / tileSize];
+        double[] tile2 = tiles[(row2 - rowBase) / tileSize];
+        int offset1 = ((row1 - rowBase) % tileSize) * tileSize;
+        int offset2 = ((row2 - rowBase) % tileSize) * tileSize;
+        for (int c = 0; c < tileSize; c++) {
+            double temp = tile1[offset1 + c];
+            tile1[offset1 + c] = tile2[offset2 + c];
+            tile2[offset2 + c] = temp;
+        }
+
+    }
+
+    // target[targetOffset...] -= multiplier * source[sourceOffset...] for one row of a tile
+    private void subtractScaledRow(double[] target, int targetOffset, double[] source, int sourceOffset,
+                                   double multiplier) {
+        for (int c = 0; c < tileSize; c++) {
+            target[targetOffset + c] -= multiplier * source[sourceOffset + c];
+        }
+    }
+
+    private <T> T waitFor(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading a panel", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // splits the matrix into tiles, all written to the first file
+    private void importMatrix(Matrix m) throws IOException {
+
+        completedSteps = 0;
+        pivotSign = 1;
+        pivotProduct = 1;
+        singular = false;
+        rank = 0;
+        cache.writeTo(0);
+
+        double largest = 0;
+        for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+            for (int tileCol = 0; tileCol < tileCols; tileCol++) {
+                Tile tile = cache.pin(tileRow, tileCol, false);
+                int rows = Math.min(tileSize, ROWS - tileRow * tileSize);
+                int cols = Math.min(tileSize, COLS - tileCol * tileSize);
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < cols; c++) {
+                        double value = m.get(tileRow * tileSize + r, tileCol * tileSize + c);
+                        tile.values[r * tileSize + c] = value;
+                        largest = Math.max(largest, Math.abs(value));
+                    }
+                }
+                cache.markDirty(tile);
+                cache.unpin(tile);
+            }
+        }
+
+        tolerance = Math.max(ROWS, COLS) * Math.ulp(1.0) * largest;
+
+        cache.flush();
+        files[0].force(false);
+        writeCheckpoint();
+
+    }
+
+    // the checkpoint is written to a temporary file first and then moved into place,
+    // so a crash while writing it leaves the previous one intact
+    private void writeCheckpoint() throws IOException {
+
+        byte[] locations;
+        synchronized (cache) { // tiles written back by the prefetcher update location too
+            locations = location.clone();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKPOINT_SIZE + locations.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(CHECKPOINT_MAGIC).putInt(ROWS).putInt(COLS).putInt(tileSize).putInt(completedSteps).putInt(rank)
+                .putLong(hash).putDouble(pivotSign * pivotProduct).putDouble(tolerance)
+                .put((byte) (singular ? 1 : 0)).put(locations).flip();
+
+        Path temporary = directory.resolve(CHECKPOINT_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+    }
+
+    // restores the progress from the checkpoint, returns false if there isn't one for this matrix and tile size
+    private boolean readCheckpoint() throws IOException {
+
+        Path path = directory.resolve(CHECKPOINT_NAME);
+        if (!Files.exists(path) || Files.size(path) != CHECKPOINT_SIZE + location.length) return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[CHECKPOINT_MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, CHECKPOINT_MAGIC) || buffer.getInt() != ROWS || buffer.getInt() != COLS ||
+                buffer.getInt() != tileSize) {
+            return false;
+        }
+        int savedSteps = buffer.getInt();
+        int savedRank = buffer.getInt();
+        if (buffer.getLong() != hash) return false;
+
+        double determinant = buffer.getDouble();
+        completedSteps = savedSteps;
+        rank = savedRank;
+        pivotSign = determinant < 0 ? -1 : 1;
+        pivotProduct = Math.abs(determinant);
+        tolerance = buffer.getDouble();
+        singular = buffer.get() != 0;
+
+        // which step finishes a tile depends on where the pivots ended up, so the locations are saved as they are
+        buffer.get(location);
+
+        return true;
+    }
+
+    private static class Tile {
+
+        final long key;
+        final double[] values;
+        int pins;
+        boolean dirty;
+
+        Tile(long key, double[] values) {
+            this.key = key;
+            this.values = values;
+        }
+    }
+
+    // the tiles held in memory, least recently used are written back to disk (if changed) and dropped
+    // once there are more than maxTiles, tiles that are pinned are in use and are never dropped
+    private class TileCache {
+
+        private final int maxTiles;
+        private final LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+        private final ThreadLocal<ByteBuffer> ioBuffers;
+
+        // file changed tiles are written to during the current step
+        private int writeFile;
+
+        TileCache(int maxTiles) {
+            this.maxTiles = maxTiles;
+            int bytes = tileSize * tileSize * Double.BYTES;
+            ioBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        synchronized void writeTo(int file) {
+            writeFile = file;
+        }
+
+        Tile pin(int tileRow, int tileCol) throws IOException {
+            return pin(tileRow, tileCol, true);
+        }
+
+        // returns the tile, reading it from disk if it isn't in memory (or starting it as 0s if read is false)
+        // it is kept in memory until it is unpinned
+        synchronized Tile pin(int tileRow, int tileCol, boolean read) throws IOException {
+
+            long key = (long) tileRow * tileCols + tileCol;
+            Tile tile = tiles.get(key);
+            if (tile == null) {
+                tile = new Tile(key, new double[tileSize * tileSize]);
+                if (read) {
+                    readTile(tile);
+                }
+                tiles.put(key, tile);
+            }
+            tile.pins++;
+            evict();
+
+            return tile;
+        }
+
+        synchronized void unpin(Tile tile) throws IOException {
+            tile.pins--;
+            evict();
+        }
+
+        synchronized void markDirty(Tile tile) {
+            tile.dirty = true;
+        }
+
+        // writes every changed tile to disk
+        synchronized void flush() throws IOException {
+            for (Tile tile : tiles.values()) {
+                if (tile.dirty) writeTile(tile);
+            }
+        }
+
+        private void evict() throws IOException {
+
+            Iterator<Tile> iterator = tiles.values().iterator();
+            while (tiles.size() > maxTiles && iterator.hasNext()) {
+                Tile tile = iterator.next();
+                if (tile.pins == 0) {
+                    if (tile.dirty) writeTile(tile);
+                    iterator.remove();
+                }
+            }
+
+        }
+
+        private void readTile(Tile tile) throws IOException {
+
+            ByteBuffer buffer = ioBuffers.get();
+            buffer.clear();
+            FileChannel file = files[location[(int) tile.key]];
+            long position = tile.key * buffer.capacity();
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0) {
+                    break; // never written, the rest of the tile is 0
+                }
+            }
+            buffer.flip();
+            buffer.asDoubleBuffer().get(tile.values, 0, buffer.remaining() / Double.BYTES);
+
+        }
+
+        private void writeTile(Tile tile) throws IOException {
+
+            ByteBuffer buffer = ioBuffers.get();
+            buffer.clear();
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            values.put(tile.values);
+
+            FileChannel file = files[writeFile];
+            long position = tile.key * buffer.capacity();
+            while (buffer.hasRemaining()) {
+                file.write(buffer, position + buffer.position());
+            }
+
+            location[(int) tile.key] = (byte) writeFile;
+            tile.dirty = false;
+
+        }
+    }
+}
@@ -0,0 +1,8 @@
+// an approximation M of a matrix A that is much cheaper to solve with than A itself
+// IterativeSolver solves with M every iteration, which brings the system closer to the identity
+// and cuts down how many iterations it takes
+public interface Preconditioner {
+
+    // sets z to M^-1 r, r must not be changed
+    void apply(double[] r, double[] z);
+}
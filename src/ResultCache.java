@@ -0,0 +1,238 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// shares determinant, rank and reduced echelon form results between matrices with identical contents
+// entries are looked up by Matrix.contentHash() and exact mode and then compared value by value, so a hash
+// collision can never return the wrong result, and an exact mode result is never used for a floating point one
+// the cache is bounded by the total number of values it holds, evicting the least recently used entries
+// the cache is thread safe so one can be shared by every thread in a service, results are calculated (and matrices
+// hashed, compared and copied) outside of the lock so threads working on different matrices don't wait on each other
+public class ResultCache {
+
+    private final long maxValues;
+    private long storedValues;
+
+    // least recently used first
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+
+    // maxValues is the most matrix values (copies of inputs plus reduced forms) the cache will hold at once
+    public ResultCache(long maxValues) {
+
+        if (maxValues < 1) {
+            throw new IllegalArgumentException("The cache must be able to hold at least 1 value");
+        }
+
+        this.maxValues = maxValues;
+
+    }
+
+    // ACCESSORS
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // returns the determinant of m, only calculating it if no identical matrix has been seen
+    public double determinant(Matrix m) {
+
+        Entry entry = lookup(m);
+        synchronized (this) {
+            if (entry.hasDeterminant) {
+                hits++;
+                return entry.determinant;
+            }
+            misses++;
+        }
+
+        double determinant = m.determinant();
+
+        synchronized (this) {
+            entry.determinant = determinant;
+            entry.hasDeterminant = true;
+        }
+
+        return determinant;
+    }
+
+    // returns the rank of m, only calculating it if no identical matrix has been seen
+    public int rank(Matrix m) {
+        Entry entry = findReducedForm(m);
+        synchronized (this) {
+            return entry.rank;
+        }
+    }
+
+    // returns a new matrix holding the reduced echelon form of m, m itself is not changed
+    public Matrix reducedEchelonForm(Matrix m) {
+
+        double[][] reducedForm;
+        Entry entry = findReducedForm(m);
+        synchronized (this) {
+            reducedForm = entry.reducedForm;
+        }
+
+        Matrix result = new Matrix(m.getRows(), m.getCols());
+        for (int row = 0; row < reducedForm.length; row++) {
+            result.setRow(row, reducedForm[row]);
+        }
+
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        storedValues = 0;
+    }
+
+    // HELPER FUNCTIONS
+
+    // returns the entry for m with its reduced form filled in
+    private Entry findReducedForm(Matrix m) {
+
+        Entry entry = lookup(m);
+        synchronized (this) {
+            if (entry.reducedForm != null) {
+                hits++;
+                return entry;
+            }
+            misses++;
+        }
+
+        // the reduced form is calculated on a copy, so m is left unchanged
+        double[][] reducedForm = m.reducedForm();
+        int rank = m.rank();
+
+        synchronized (this) {
+            // another thread may have filled it in while this one was calculating
+            if (entry.reducedForm == null) {
+                boolean stillCached = entries.get(entry.key) == entry;
+                entry.reducedForm = reducedForm;
+                entry.rank = rank;
+                if (stillCached) {
+                    storedValues += (long) m.getRows() * m.getCols();
+                    evict();
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    // finds the entry with the same contents and exact mode as m, adding a new one if there isn't one
+    // must be called without holding the lock, which is only taken to read and change the map
+    private Entry lookup(Matrix m) {
+
+        boolean exactMode = m.isExactMode();
+        long key = key(m.contentHash(), exactMode);
+
+        Entry found;
+        synchronized (this) {
+            found = entries.get(key);
+        }
+
+        Entry added = null;
+        while (true) {
+
+            // the values of an entry never change, so they can be compared without the lock
+            if (found != null && found.matches(m, exactMode)) {
+                return found;
+            }
+
+            if (added == null) {
+                added = new Entry(key, exactMode, m.copyData());
+            }
+
+            synchronized (this) {
+                Entry current = entries.get(key);
+                if (current == found) {
+                    // either a new matrix or a hash collision, in which case the newer matrix replaces the older one
+                    if (current != null) {
+                        storedValues -= current.valueCount();
+                    }
+                    entries.put(key, added);
+                    storedValues += added.valueCount();
+                    evict();
+                    return added;
+                }
+
+                // another thread changed the entry while this one was comparing or copying, so compare with that one
+                found = current;
+            }
+        }
+    }
+
+    // results in exact mode can differ from floating point ones, so the two are kept under different keys
+    private static long key(long contentHash, boolean exactMode) {
+        return 31 * contentHash + (exactMode ? 1 : 0);
+    }
+
+    // removes least recently used entries until the cache is back within its bound
+    // the most recently used entry is always kept, even if it is larger than the bound by itself
+    private void evict() {
+
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (storedValues > maxValues && entries.size() > 1) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            storedValues -= eldest.valueCount();
+        }
+
+    }
+
+    private static class Entry {
+
+        final long key;
+        final boolean exactMode;
+        final double[][] values;
+        double determinant;
+        boolean hasDeterminant;
+        int rank;
+        double[][] reducedForm;
+
+        Entry(long key, boolean exactMode, double[][] values) {
+            this.key = key;
+            this.exactMode = exactMode;
+            this.values = values;
+        }
+
+        // whether m has exactly the same size and values (with -0 and 0 counted as equal, and NaN equal to NaN)
+        // and its results are calculated in the same mode
+        boolean matches(Matrix m, boolean exactMode) {
+
+            if (exactMode != this.exactMode) {
+                return false;
+            }
+            if (m.getRows() != values.length || (values.length > 0 && m.getCols() != values[0].length)) {
+                return false;
+            }
+
+            for (int row = 0; row < values.length; row++) {
+                for (int col = 0; col < values[row].length; col++) {
+                    if (Double.compare(m.get(row, col) + 0.0, values[row][col] + 0.0) != 0) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        // number of values held, the copy of the matrix plus the reduced form once it is calculated
+        long valueCount() {
+            long count = values.length == 0 ? 0 : (long) values.length * values[0].length;
+            return reducedForm == null ? count : count * 2;
+        }
+    }
+}
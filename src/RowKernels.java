@@ -0,0 +1,178 @@
+// inner loops of the row operations, shared by the storage implementations
+// the kernels do the arithmetic in one loop and the snapping to 0 in a second one, so the arithmetic is branch free
+// when VectorRowKernels (compiled separately, see the README) and jdk.incubator.vector are available those loops
+// use the Vector API, otherwise they are plain loops that the JIT can compile to SIMD instructions itself
+// -Dmatrixsolver.scalarKernels=true switches back to the original single loop versions
+public final class RowKernels {
+
+    // which kernels are in use, see getMode
+    public enum Mode { VECTOR, SPLIT_LOOP, SCALAR }
+
+    private static final boolean SCALAR = Boolean.getBoolean("matrixsolver.scalarKernels");
+
+    // null unless the Vector API kernels could be loaded
+    private static final VectorKernels VECTOR = loadVectorKernels();
+
+    // the split loops copy the source row here when it is in the same array as the target (FlatStorage),
+    // since the JIT won't vectorize a loop that reads and writes the same array at different offsets
+    private static final ThreadLocal<double[]> SCRATCH = ThreadLocal.withInitial(() -> new double[0]);
+
+    private RowKernels() {
+    }
+
+    public static Mode getMode() {
+        if (SCALAR) return Mode.SCALAR;
+        return VECTOR != null ? Mode.VECTOR : Mode.SPLIT_LOOP;
+    }
+
+    // multiplies length values starting at offset by scalar
+    public static void scale(double[] values, int offset, int length, double scalar) {
+
+        int end = offset + length;
+        int snapped = 0;
+
+        if (SCALAR) {
+            for (int i = offset; i < end; i++) {
+
+                values[i] = values[i] * scalar;
+
+                // to eliminate floating point errors
+                if (Math.abs(values[i]) < Matrix.PRECISION) {
+                    if (values[i] != 0) snapped++;
+                    values[i] = 0;
+                }
+
+            }
+        } else {
+            if (VECTOR != null) {
+                VECTOR.scale(values, offset, length, scalar);
+            } else {
+                for (int i = offset; i < end; i++) {
+                    values[i] *= scalar;
+                }
+            }
+            snapped = snapToZero(values, offset, length);
+        }
+
+        if (SolverMetrics.isEnabled()) {
+            SolverMetrics.count(SolverMetrics.Counter.SCALE_ROW, 1);
+            SolverMetrics.count(SolverMetrics.Counter.FLOPS, length);
+            SolverMetrics.count(SolverMetrics.Counter.SNAPPED_TO_ZERO, snapped);
+        }
+
+    }
+
+    // adds source times scalar to target, element by element, for length values
+    public static void axpy(double[] source, int sourceOffset, double[] target, int targetOffset,
+                            int length, double scalar) {
+
+        int snapped = 0;
+
+        if (SCALAR) {
+            for (int i = 0; i < length; i++) {
+
+                target[targetOffset + i] += source[sourceOffset + i] * scalar;
+
+                // to eliminate floating point errors
+                if (Math.abs(target[targetOffset + i]) < Matrix.PRECISION) {
+                    if (target[targetOffset + i] != 0) snapped++;
+                    target[targetOffset + i] = 0;
+                }
+
+            }
+        } else {
+            if (VECTOR != null) {
+                VECTOR.axpy(source, sourceOffset, target, targetOffset, length, scalar);
+            } else {
+                if (source == target) {
+                    double[] scratch = SCRATCH.get();
+                    if (scratch.length < length) {
+                        scratch = new double[length];
+                        SCRATCH.set(scratch);
+                    }
+                    System.arraycopy(source, sourceOffset, scratch, 0, length);
+                    source = scratch;
+                    sourceOffset = 0;
+                }
+                for (int i = 0; i < length; i++) {
+                    target[targetOffset + i] += source[sourceOffset + i] * scalar;
+                }
+            }
+            snapped = snapToZero(target, targetOffset, length);
+        }
+
+        if (SolverMetrics.isEnabled()) {
+            SolverMetrics.count(SolverMetrics.Counter.ADD_ROWS, 1);
+            SolverMetrics.count(SolverMetrics.Counter.FLOPS, 2L * length);
+            SolverMetrics.count(SolverMetrics.Counter.SNAPPED_TO_ZERO, snapped);
+        }
+
+    }
+
+    // the sum of length values starting at offset times the first length values of x
+    // four separate sums so the additions don't all wait on each other
+    public static double dot(double[] values, int offset, double[] x, int length) {
+
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            sum0 += values[offset + i] * x[i];
+            sum1 += values[offset + i + 1] * x[i + 1];
+            sum2 += values[offset + i + 2] * x[i + 2];
+            sum3 += values[offset + i + 3] * x[i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += values[offset + i] * x[i];
+        }
+
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    // sets every value within Matrix.PRECISION of 0 to exactly 0, to eliminate floating point errors
+    // the values are the same as they would be if each one was snapped right after it was calculated
+    // returns how many nonzero values were snapped
+    public static int snapToZero(double[] values, int offset, int length) {
+
+        if (VECTOR != null) {
+            return VECTOR.snapToZero(values, offset, length, Matrix.PRECISION);
+        }
+
+        int end = offset + length;
+        int snapped = 0;
+        for (int i = offset; i < end; i++) {
+            if (Math.abs(values[i]) < Matrix.PRECISION) {
+                if (values[i] != 0) snapped++;
+                values[i] = 0;
+            }
+        }
+
+        return snapped;
+    }
+
+    // the Vector API versions of the loops, implemented by VectorRowKernels
+    // the arithmetic is the same as the plain loops, so they give exactly the same values
+    interface VectorKernels {
+
+        void scale(double[] values, int offset, int length, double scalar);
+
+        void axpy(double[] source, int sourceOffset, double[] target, int targetOffset, int length, double scalar);
+
+        // returns how many nonzero values were snapped, like RowKernels.snapToZero
+        int snapToZero(double[] values, int offset, int length, double precision);
+    }
+
+    private static VectorKernels loadVectorKernels() {
+
+        if (SCALAR) return null;
+
+        try {
+            return (VectorKernels) Class.forName("VectorRowKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled, or run without --add-modules jdk.incubator.vector
+            return null;
+        }
+    }
+}
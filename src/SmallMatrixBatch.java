@@ -0,0 +1,571 @@
+import java.util.Arrays;
+
+// many matrices of the same small size (up to 8 x 8), solved together without a Matrix object for each one
+// values are stored structure of arrays: every matrix's value at a location sits next to the same
+// location of the next matrix, so the fixed size kernels below run down long contiguous runs of values
+// determinants and inverses of 2 x 2, 3 x 3 and 4 x 4 matrices are written out in full with no branches,
+// which lets the JIT vectorize them across matrices, larger sizes go through a small scratch array per matrix
+public class SmallMatrixBatch {
+
+    public static final int MAX_SIZE = 8;
+
+    private final int ROWS;
+    private final int COLS;
+    private final int COUNT;
+
+    // the value at (row, col) of matrix i is at (row * COLS + col) * COUNT + i
+    private final double[] values;
+
+    public SmallMatrixBatch(int rows, int cols, int count) {
+
+        if (rows < 1 || cols < 1 || rows > MAX_SIZE || cols > MAX_SIZE) {
+            throw new IllegalArgumentException("Matrices in a batch must have between 1 and " + MAX_SIZE +
+                    " rows and columns");
+        }
+        if (count < 0 || (long) rows * cols * count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Invalid number of matrices: " + count);
+        }
+
+        this.ROWS = rows;
+        this.COLS = cols;
+        this.COUNT = count;
+        values = new double[rows * cols * count];
+
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    public int getCount() {
+        return COUNT;
+    }
+
+    public double get(int index, int row, int col) {
+        return values[offset(row, col) + validIndex(index)];
+    }
+
+    // copies one matrix of the batch out into a Matrix
+    public Matrix getMatrix(int index) {
+
+        validIndex(index);
+
+        Matrix m = new Matrix(ROWS, COLS);
+        double[] rowValues = new double[COLS];
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                rowValues[col] = values[offset(row, col) + index];
+            }
+            m.setRow(row, rowValues);
+        }
+
+        return m;
+    }
+
+    // MUTATORS
+
+    public void set(int index, int row, int col, double value) {
+        values[offset(row, col) + validIndex(index)] = value;
+    }
+
+    // copies a Matrix of the same size into the batch
+    public void setMatrix(int index, Matrix m) {
+
+        validIndex(index);
+        if (m.getRows() != ROWS || m.getCols() != COLS) {
+            throw new IllegalArgumentException("Matrix must be " + ROWS + " x " + COLS + " to be put in this batch");
+        }
+
+        for (int row = 0; row < ROWS; row++) {
+            for (int col = 0; col < COLS; col++) {
+                values[offset(row, col) + index] = m.get(row, col);
+            }
+        }
+
+    }
+
+    // DETERMINANTS
+
+    // returns the determinant of every matrix in the batch
+    public double[] determinants() {
+        double[] result = new double[COUNT];
+        determinants(result);
+        return result;
+    }
+
+    // writes the determinant of matrix i into dest[i]
+    public void determinants(double[] dest) {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrices must be square to find the determinant");
+        }
+        if (dest.length < COUNT) {
+            throw new IllegalArgumentException("There must be room for " + COUNT + " determinants");
+        }
+
+        switch (ROWS) {
+            case 1:
+                System.arraycopy(values, 0, dest, 0, COUNT);
+                break;
+            case 2:
+                determinants2(dest);
+                break;
+            case 3:
+                determinants3(dest);
+                break;
+            case 4:
+                determinants4(dest);
+                break;
+            default:
+                double[] scratch = new double[ROWS * COLS];
+                for (int i = 0; i < COUNT; i++) {
+                    gather(i, scratch);
+                    dest[i] = eliminate(scratch, ROWS, null);
+                }
+                break;
+        }
+
+    }
+
+    // INVERSES
+
+    // writes the inverse of every matrix into dest, which must be a batch of the same size and count
+    // matrices that are singular get NaN for every value: 1 x 1 to 4 x 4 ones when the determinant is within
+    // rounding error of 0 relative to the product of the row lengths (the largest the determinant could be),
+    // larger ones when elimination finds no pivot larger than rounding error (see LUDecomposition.pivotTolerance)
+    // both only depend on the shape of the matrix, not its scale, so 0.01 * I is not singular
+    // returns how many inverses are NaN, which is the number of singular matrices unless some contain NaN
+    public int inverses(SmallMatrixBatch dest) {
+
+        if (ROWS != COLS) {
+            throw new IllegalArgumentException("Matrices must be square to find the inverse");
+        }
+        if (dest.ROWS != ROWS || dest.COLS != COLS || dest.COUNT != COUNT) {
+            throw new IllegalArgumentException("The inverses must go in a batch of the same size and count");
+        }
+
+        switch (ROWS) {
+            case 1:
+                inverses1(dest.values);
+                break;
+            case 2:
+                inverses2(dest.values);
+                break;
+            case 3:
+                inverses3(dest.values);
+                break;
+            case 4:
+                inverses4(dest.values);
+                break;
+            default:
+                double[] scratch = new double[ROWS * COLS];
+                double[] inverse = new double[ROWS * COLS];
+                for (int i = 0; i < COUNT; i++) {
+                    gather(i, scratch);
+                    identity(inverse, ROWS);
+                    if (eliminate(scratch, ROWS, inverse) == 0) {
+                        Arrays.fill(inverse, Double.NaN);
+                    }
+                    dest.scatter(i, inverse);
+                }
+                break;
+        }
+
+        int singular = 0;
+        for (int i = 0; i < COUNT; i++) {
+            if (Double.isNaN(dest.values[i])) singular++;
+        }
+
+        return singular;
+    }
+
+    // ECHELON FORMS
+
+    // puts every matrix into echelon form in place, returning the rank of each one
+    // uses the same partial pivoting and snapping to 0 as Matrix.echelonForm
+    public int[] echelonForms() {
+
+        int[] ranks = new int[COUNT];
+        double[] scratch = new double[ROWS * COLS];
+        for (int i = 0; i < COUNT; i++) {
+            gather(i, scratch);
+            ranks[i] = echelonForm(scratch);
+            scatter(i, scratch);
+        }
+
+        return ranks;
+    }
+
+    // puts every matrix into reduced echelon form in place, returning the rank of each one
+    public int[] reducedEchelonForms() {
+
+        int[] ranks = new int[COUNT];
+        double[] scratch = new double[ROWS * COLS];
+        for (int i = 0; i < COUNT; i++) {
+            gather(i, scratch);
+            ranks[i] = echelonForm(scratch);
+            backSubstitute(scratch, ranks[i]);
+            scatter(i, scratch);
+        }
+
+        return ranks;
+    }
+
+    // HELPER FUNCTIONS
+
+    private int offset(int row, int col) {
+
+        if (row < 0 || row >= ROWS || col < 0 || col >= COLS) {
+            throw new IndexOutOfBoundsException("Location (" + row + ", " + col + ") is outside of a " +
+                    ROWS + " x " + COLS + " matrix");
+        }
+
+        return (row * COLS + col) * COUNT;
+    }
+
+    private int validIndex(int index) {
+
+        if (index < 0 || index >= COUNT) {
+            throw new IndexOutOfBoundsException("Matrix " + index + " is outside of a batch of " + COUNT);
+        }
+
+        return index;
+    }
+
+    // copies matrix i into a row major scratch array, and back again
+    private void gather(int i, double[] scratch) {
+        for (int location = 0; location < scratch.length; location++) {
+            scratch[location] = values[location * COUNT + i];
+        }
+    }
+
+    private void scatter(int i, double[] scratch) {
+        for (int location = 0; location < scratch.length; location++) {
+            values[location * COUNT + i] = scratch[location];
+        }
+    }
+
+    private void determinants2(double[] dest) {
+
+        final int n = COUNT;
+        double[] v = values;
+        for (int i = 0; i < n; i++) {
+            dest[i] = v[i] * v[3 * n + i] - v[n + i] * v[2 * n + i];
+        }
+
+    }
+
+    private void determinants3(double[] dest) {
+
+        final int n = COUNT;
+        double[] v = values;
+        for (int i = 0; i < n; i++) {
+            double a = v[i], b = v[n + i], c = v[2 * n + i];
+            double d = v[3 * n + i], e = v[4 * n + i], f = v[5 * n + i];
+            double g = v[6 * n + i], h = v[7 * n + i], k = v[8 * n + i];
+            dest[i] = a * (e * k - f * h) - b * (d * k - f * g) + c * (d * h - e * g);
+        }
+
+    }
+
+    // expands along the top two rows, using the 2 x 2 minors of the top and bottom halves
+    private void determinants4(double[] dest) {
+
+        final int n = COUNT;
+        double[] v = values;
+        for (int i = 0; i < n; i++) {
+            double a00 = v[i], a01 = v[n + i], a02 = v[2 * n + i], a03 = v[3 * n + i];
+            double a10 = v[4 * n + i], a11 = v[5 * n + i], a12 = v[6 * n + i], a13 = v[7 * n + i];
+            double a20 = v[8 * n + i], a21 = v[9 * n + i], a22 = v[10 * n + i], a23 = v[11 * n + i];
+            double a30 = v[12 * n + i], a31 = v[13 * n + i], a32 = v[14 * n + i], a33 = v[15 * n + i];
+
+            double s0 = a00 * a11 - a10 * a01;
+            double s1 = a00 * a12 - a10 * a02;
+            double s2 = a00 * a13 - a10 * a03;
+            double s3 = a01 * a12 - a11 * a02;
+            double s4 = a01 * a13 - a11 * a03;
+            double s5 = a02 * a13 - a12 * a03;
+
+            double c5 = a22 * a33 - a32 * a23;
+            double c4 = a21 * a33 - a31 * a23;
+            double c3 = a21 * a32 - a31 * a22;
+            double c2 = a20 * a33 - a30 * a23;
+            double c1 = a20 * a32 - a30 * a22;
+            double c0 = a20 * a31 - a30 * a21;
+
+            dest[i] = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+        }
+
+    }
+
+    // 1 / det for invertible matrices and NaN for singular ones
+    // |det| is at most rowLengths, the product of the row lengths, with equality when the rows are orthogonal,
+    // so a determinant within size * ulp(1) of that is only rounding error and the rows are linearly dependent
+    private static double inverseScale(double det, double rowLengths, int size) {
+        return Math.abs(det) <= size * Math.ulp(1.0) * rowLengths ? Double.NaN : 1 / det;
+    }
+
+    private void inverses1(double[] out) {
+        for (int i = 0; i < COUNT; i++) {
+            out[i] = values[i] == 0 ? Double.NaN : 1 / values[i];
+        }
+    }
+
+    private void inverses2(double[] out) {
+
+        final int n = COUNT;
+        double[] v = values;
+        for (int i = 0; i < n; i++) {
+            double a = v[i], b = v[n + i], c = v[2 * n + i], d = v[3 * n + i];
+            double rowLengths = Math.sqrt(a * a + b * b) * Math.sqrt(c * c + d * d);
+            double scale = inverseScale(a * d - b * c, rowLengths, 2);
+            out[i] = d * scale;
+            out[n + i] = -b * scale;
+            out[2 * n + i] = -c * scale;
+            out[3 * n + i] = a * scale;
+        }
+
+    }
+
+    // the inverse is the adjugate (transposed cofactors) divided by the determinant
+    private void inverses3(double[] out) {
+
+        final int n = COUNT;
+        double[] v = values;
+        for (int i = 0; i < n; i++) {
+            double a = v[i], b = v[n + i], c = v[2 * n + i];
+            double d = v[3 * n + i], e = v[4 * n + i], f = v[5 * n + i];
+            double g = v[6 * n + i], h = v[7 * n + i], k = v[8 * n + i];
+
+            double cofactorA = e * k - f * h;
+            double cofactorB = f * g - d * k;
+            double cofactorC = d * h - e * g;
+            double rowLengths = Math.sqrt(a * a + b * b + c * c) * Math.sqrt(d * d + e * e + f * f)
+                    * Math.sqrt(g * g + h * h + k * k);
+            double scale = inverseScale(a * cofactorA + b * cofactorB + c * cofactorC, rowLengths, 3);
+
+            out[i] = cofactorA * scale;
+            out[n + i] = (c * h - b * k) * scale;
+            out[2 * n + i] = (b * f - c * e) * scale;
+            out[3 * n + i] = cofactorB * scale;
+            out[4 * n + i] = (a * k - c * g) * scale;
+            out[5 * n + i] = (c * d - a * f) * scale;
+            out[6 * n + i] = cofactorC * scale;
+            out[7 * n + i] = (b * g - a * h) * scale;
+            out[8 * n + i] = (a * e - b * d) * scale;
+        }
+
+    }
+
+    // the same 2 x 2 minors as determinants4 give every cofactor of the adjugate
+    private void inverses4(double[] out) {
+
+        final int n = COUNT;
+        double[] v = values;
+        for (int i = 0; i < n; i++) {
+            double a00 = v[i], a01 = v[n + i], a02 = v[2 * n + i], a03 = v[3 * n + i];
+            double a10 = v[4 * n + i], a11 = v[5 * n + i], a12 = v[6 * n + i], a13 = v[7 * n + i];
+            double a20 = v[8 * n + i], a21 = v[9 * n + i], a22 = v[10 * n + i], a23 = v[11 * n + i];
+            double a30 = v[12 * n + i], a31 = v[13 * n + i], a32 = v[14 * n + i], a33 = v[15 * n + i];
+
+            double s0 = a00 * a11 - a10 * a01;
+            double s1 = a00 * a12 - a10 * a02;
+            double s2 = a00 * a13 - a10 * a03;
+            double s3 = a01 * a12 - a11 * a02;
+            double s4 = a01 * a13 - a11 * a03;
+            double s5 = a02 * a13 - a12 * a03;
+
+            double c5 = a22 * a33 - a32 * a23;
+            double c4 = a21 * a33 - a31 * a23;
+            double c3 = a21 * a32 - a31 * a22;
+            double c2 = a20 * a33 - a30 * a23;
+            double c1 = a20 * a32 - a30 * a22;
+            double c0 = a20 * a31 - a30 * a21;
+
+            double rowLengths = Math.sqrt(a00 * a00 + a01 * a01 + a02 * a02 + a03 * a03)
+                    * Math.sqrt(a10 * a10 + a11 * a11 + a12 * a12 + a13 * a13)
+                    * Math.sqrt(a20 * a20 + a21 * a21 + a22 * a22 + a23 * a23)
+                    * Math.sqrt(a30 * a30 + a31 * a31 + a32 * a32 + a33 * a33);
+            double scale = inverseScale(s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0, rowLengths, 4);
+
+            out[i] = (a11 * c5 - a12 * c4 + a13 * c3) * scale;
+            out[n + i] = (-a01 * c5 + a02 * c4 - a03 * c3) * scale;
+            out[2 * n + i] = (a31 * s5 - a32 * s4 + a33 * s3) * scale;
+            out[3 * n + i] = (-a21 * s5 + a22 * s4 - a23 * s3) * scale;
+
+            out[4 * n + i] = (-a10 * c5 + a12 * c2 - a13 * c1) * scale;
+            out[5 * n + i] = (a00 * c5 - a02 * c2 + a03 * c1) * scale;
+            out[6 * n + i] = (-a30 * s5 + a32 * s2 - a33 * s1) * scale;
+            out[7 * n + i] = (a20 * s5 - a22 * s2 + a23 * s1) * scale;
+
+            out[8 * n + i] = (a10 * c4 - a11 * c2 + a13 * c0) * scale;
+            out[9 * n + i] = (-a00 * c4 + a01 * c2 - a03 * c0) * scale;
+            out[10 * n + i] = (a30 * s4 - a31 * s2 + a33 * s0) * scale;
+            out[11 * n + i] = (-a20 * s4 + a21 * s2 - a23 * s0) * scale;
+
+            out[12 * n + i] = (-a10 * c3 + a11 * c1 - a12 * c0) * scale;
+            out[13 * n + i] = (a00 * c3 - a01 * c1 + a02 * c0) * scale;
+            out[14 * n + i] = (-a30 * s3 + a31 * s1 - a32 * s0) * scale;
+            out[15 * n + i] = (a20 * s3 - a21 * s1 + a22 * s0) * scale;
+        }
+
+    }
+
+    private static void identity(double[] m, int size) {
+        Arrays.fill(m, 0);
+        for (int d = 0; d < size; d++) {
+            m[d * size + d] = 1;
+        }
+    }
+
+    // reduces a square row major matrix to upper triangular form with partial pivoting, returning the determinant
+    // if inverse isn't null, every row operation is also done to it and the matrix is taken the rest of the way to
+    // the identity, leaving the inverse in it (its contents are meaningless if the determinant is 0)
+    // the determinant is exactly 0 when a column has no pivot larger than rounding error, the same relative test
+    // as LUDecomposition
+    private static double eliminate(double[] m, int size, double[] inverse) {
+
+        double largest = 0;
+        for (int i = 0; i < size * size; i++) {
+            largest = Math.max(largest, Math.abs(m[i]));
+        }
+        double tolerance = size * Math.ulp(1.0) * largest;
+
+        double det = 1;
+        for (int col = 0; col < size; col++) {
+
+            int pivot = col;
+            for (int row = col + 1; row < size; row++) {
+                if (Math.abs(m[row * size + col]) > Math.abs(m[pivot * size + col])) pivot = row;
+            }
+
+            double pivotValue = m[pivot * size + col];
+            if (Math.abs(pivotValue) <= tolerance) return 0;
+
+            if (pivot != col) {
+                swap(m, size, pivot, col);
+                if (inverse != null) swap(inverse, size, pivot, col);
+                det = -det;
+            }
+            det *= pivotValue;
+
+            int start = inverse == null ? col + 1 : 0;
+            for (int row = start; row < size; row++) {
+                if (row == col) continue;
+                double factor = m[row * size + col] / pivotValue;
+                for (int c = col; c < size; c++) {
+                    m[row * size + c] -= factor * m[col * size + c];
+                }
+                if (inverse != null) {
+                    for (int c = 0; c < size; c++) {
+                        inverse[row * size + c] -= factor * inverse[col * size + c];
+                    }
+                }
+            }
+        }
+
+        if (inverse != null) {
+            for (int row = 0; row < size; row++) {
+                double scale = 1 / m[row * size + row];
+                for (int c = 0; c < size; c++) {
+                    inverse[row * size + c] *= scale;
+                }
+            }
+        }
+
+        return det;
+    }
+
+    private static void swap(double[] m, int cols, int row1, int row2) {
+        for (int c = 0; c < cols; c++) {
+            double temp = m[row1 * cols + c];
+            m[row1 * cols + c] = m[row2 * cols + c];
+            m[row2 * cols + c] = temp;
+        }
+    }
+
+    // GaussianElimination.echelonForm on a row major scratch array
+    private int echelonForm(double[] m) {
+
+        int pivotRow = 0;
+        for (int col = 0; col < COLS && pivotRow < ROWS; col++) {
+
+            int bestRow = -1;
+            double bestMagnitude = 0;
+            for (int row = pivotRow; row < ROWS; row++) {
+                double magnitude = Math.abs(m[row * COLS + col]);
+                if (magnitude > bestMagnitude) {
+                    bestMagnitude = magnitude;
+                    bestRow = row;
+                }
+            }
+
+            if (bestRow == -1) continue; // no pivot in this column
+
+            if (bestRow != pivotRow) {
+                swap(m, COLS, bestRow, pivotRow);
+            }
+
+            double pivotValue = m[pivotRow * COLS + col];
+            for (int row = pivotRow + 1; row < ROWS; row++) {
+                double value = m[row * COLS + col];
+                if (value != 0) {
+                    addScaledRow(m, pivotRow, row, col, -value / pivotValue);
+                }
+            }
+
+            pivotRow++;
+        }
+
+        return pivotRow;
+    }
+
+    // GaussianElimination.backSubstitute on a row major scratch array already in echelon form
+    private void backSubstitute(double[] m, int rank) {
+
+        for (int row = rank - 1; row >= 0; row--) {
+
+            int pivotCol = 0;
+            while (m[row * COLS + pivotCol] == 0) {
+                pivotCol++;
+            }
+
+            double pivotValue = m[row * COLS + pivotCol];
+            for (int other = 0; other < row; other++) {
+                double value = m[other * COLS + pivotCol];
+                if (value != 0) {
+                    addScaledRow(m, row, other, pivotCol, -value / pivotValue);
+                }
+            }
+
+            if (pivotValue != 1) {
+                double scale = 1 / pivotValue;
+                for (int col = pivotCol; col < COLS; col++) {
+                    double scaled = m[row * COLS + col] * scale;
+                    m[row * COLS + col] = Math.abs(scaled) < Matrix.PRECISION ? 0 : scaled;
+                }
+            }
+        }
+
+    }
+
+    // adds source times scalar to target from col onwards, snapping values near 0 to 0
+    // the value in col itself is set to exactly 0, since that is what the scalar was chosen for
+    private void addScaledRow(double[] m, int source, int target, int col, double scalar) {
+
+        int sourceStart = source * COLS;
+        int targetStart = target * COLS;
+        for (int c = col + 1; c < COLS; c++) {
+            double value = m[targetStart + c] + m[sourceStart + c] * scalar;
+            m[targetStart + c] = Math.abs(value) < Matrix.PRECISION ? 0 : value;
+        }
+        m[targetStart + col] = 0;
+
+    }
+}
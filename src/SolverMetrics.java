@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// opt-in counters and timers for the solver, plus a JDK Flight Recorder event for every
+// echelonForm, reducedEchelonForm and determinant call
+// everything is off by default, turn it on with setEnabled(true) or -Dmatrixsolver.metrics=true
+// while off, each instrumented spot only checks a single boolean, so it can stay compiled into production
+public final class SolverMetrics {
+
+    public enum Counter { ROW_SWAPS, ADD_ROWS, SCALE_ROW, FLOPS, SNAPPED_TO_ZERO }
+
+    public enum Phase { SORT_ROWS, ELIMINATION, BACK_SUBSTITUTION, TO_STRING }
+
+    private static volatile boolean enabled = Boolean.getBoolean("matrixsolver.metrics");
+
+    private static final LongAdder[] counters = newAdders(Counter.values().length);
+    private static final LongAdder[] phaseNanos = newAdders(Phase.values().length);
+
+    private SolverMetrics() {
+    }
+
+    // SETTINGS
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        for (LongAdder phase : phaseNanos) {
+            phase.reset();
+        }
+    }
+
+    // ACCESSORS
+
+    public static long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public static long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    // every counter and phase time on its own line
+    public static String report() {
+
+        StringBuilder builder = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            builder.append(counter).append(": ").append(getCount(counter)).append('\n');
+        }
+        for (Phase phase : Phase.values()) {
+            builder.append(phase).append(": ").append(getPhaseNanos(phase) / 1_000_000.0).append(" ms\n");
+        }
+
+        return builder.toString();
+    }
+
+    // RECORDING
+
+    public static void count(Counter counter, long amount) {
+        if (enabled) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+    // returns the time to pass to endPhase, 0 when metrics are off so the clock isn't even read
+    public static long startPhase() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void endPhase(Phase phase, long start) {
+        if (enabled && start != 0) {
+            phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+
+    // starts a flight recorder event for an operation on a matrix, returns null when metrics are off
+    public static OperationEvent beginOperation(String operation, int rows, int cols) {
+
+        if (!enabled) return null;
+
+        OperationEvent event = new OperationEvent();
+        event.operation = operation;
+        event.rows = rows;
+        event.cols = cols;
+        event.begin();
+
+        return event;
+    }
+
+    // records which structure (see StructureAnalysis) decided how the operation was done
+    public static void describeStructure(OperationEvent event, StructureAnalysis structure) {
+        if (event != null) {
+            event.structure = structure.toString();
+        }
+    }
+
+    public static void endOperation(OperationEvent event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    // HELPER FUNCTIONS
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @jdk.jfr.Name("matrixsolver.Operation")
+    @jdk.jfr.Label("Matrix Operation")
+    @jdk.jfr.Category("Matrix Solver")
+    @jdk.jfr.Description("An echelonForm, reducedEchelonForm or determinant call")
+    public static class OperationEvent extends jdk.jfr.Event {
+
+        @jdk.jfr.Label("Operation")
+        String operation;
+
+        @jdk.jfr.Label("Rows")
+        int rows;
+
+        @jdk.jfr.Label("Columns")
+        int cols;
+
+        @jdk.jfr.Label("Structure")
+        String structure;
+    }
+}
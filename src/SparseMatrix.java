@@ -0,0 +1,496 @@
+import java.util.Arrays;
+
+// a matrix that only stores its nonzero values, for systems that are mostly 0s
+// each row keeps its column indices in sorted order alongside the matching values,
+// so memory and the row operations scale with the number of nonzeros instead of rows * cols
+public class SparseMatrix implements LinearOperator {
+
+    // a pivot candidate has to be at least this fraction of the largest value in its column
+    // lower values let the ordering pick sparser rows, higher values favor numerical stability
+    private static final double PIVOT_THRESHOLD = 0.1;
+
+    private static final int[] NO_COLS = new int[0];
+    private static final double[] NO_VALUES = new double[0];
+
+    private final int ROWS;
+    private final int COLS;
+
+    private int[][] rowCols;
+    private double[][] rowValues;
+    private int[] rowSizes;
+
+    public SparseMatrix(int rows, int cols) {
+
+        if (rows < 0 || cols < 0) throw new IllegalArgumentException("The matrix cannot have a dimension of 0");
+
+        this.ROWS = rows;
+        this.COLS = cols;
+
+        rowCols = new int[ROWS][];
+        rowValues = new double[ROWS][];
+        rowSizes = new int[ROWS];
+        Arrays.fill(rowCols, NO_COLS);
+        Arrays.fill(rowValues, NO_VALUES);
+
+    }
+
+    // copies the nonzero values of a dense matrix
+    public static SparseMatrix fromMatrix(Matrix m) {
+
+        SparseMatrix sparse = new SparseMatrix(m.getRows(), m.getCols());
+        double[] values = new double[m.getCols()];
+        for (int row = 0; row < m.getRows(); row++) {
+            for (int col = 0; col < values.length; col++) {
+                values[col] = m.get(row, col);
+            }
+            sparse.setRow(row, values);
+        }
+
+        return sparse;
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    // returns value at specified location in the matrix
+    public double get(int row, int col) {
+
+        if (!validRow(row) || !validCol(col)) {
+            throw new IllegalArgumentException("Inputted location out of bounds");
+        }
+
+        int index = Arrays.binarySearch(rowCols[row], 0, rowSizes[row], col);
+        return index >= 0 ? rowValues[row][index] : 0;
+
+    }
+
+    // returns what column the leading coefficient is in of that row
+    // returns -1 if there is no leading coefficient (all 0 row)
+    public int getPivotCol(int row) {
+
+        if (!validRow(row)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        return rowSizes[row] == 0 ? -1 : rowCols[row][0];
+
+    }
+
+    public int getRowNonZeroCount(int row) {
+
+        if (!validRow(row)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        return rowSizes[row];
+
+    }
+
+    public long getNonZeroCount() {
+        long count = 0;
+        for (int row = 0; row < ROWS; row++) {
+            count += rowSizes[row];
+        }
+        return count;
+    }
+
+    // the row times x, only touching the nonzero values
+    public double multiplyRow(int row, double[] x) {
+
+        if (!validRow(row)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        int[] cols = rowCols[row];
+        double[] values = rowValues[row];
+        double sum = 0;
+        for (int i = 0; i < rowSizes[row]; i++) {
+            sum += values[i] * x[cols[i]];
+        }
+        return sum;
+    }
+
+    public double getDiagonal(int row) {
+        return get(row, row);
+    }
+
+    public int getRowWork() {
+        return (int) Math.min(Integer.MAX_VALUE, getNonZeroCount() / Math.max(1, ROWS));
+    }
+
+    // the column indices of the nonzero values in the row, in order
+    // the array is shared and can be longer than the row, only the first getRowNonZeroCount(row) are used
+    int[] getRowCols(int row) {
+        return rowCols[row];
+    }
+
+    // the nonzero values in the row, matching getRowCols, with the same sharing
+    double[] getRowValues(int row) {
+        return rowValues[row];
+    }
+
+    // copies the values into a dense matrix, for display or for use with the dense algorithms
+    public Matrix toMatrix() {
+
+        Matrix m = new Matrix(ROWS, COLS);
+        for (int row = 0; row < ROWS; row++) {
+            for (int i = 0; i < rowSizes[row]; i++) {
+                m.set(row, rowCols[row][i], rowValues[row][i]);
+            }
+        }
+
+        return m;
+    }
+
+    // MUTATORS
+
+    // sets value at specified location in the matrix, setting a value to 0 removes it
+    public void set(int row, int col, double value) {
+
+        if (!validRow(row) || !validCol(col)) {
+            throw new IllegalArgumentException("Inputted location out of bounds");
+        }
+
+        int size = rowSizes[row];
+        int[] cols = rowCols[row];
+        double[] values = rowValues[row];
+        int index = Arrays.binarySearch(cols, 0, size, col);
+
+        if (index >= 0) {
+            if (value != 0) {
+                values[index] = value;
+            } else { // remove the entry by shifting everything after it left
+                System.arraycopy(cols, index + 1, cols, index, size - index - 1);
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                rowSizes[row] = size - 1;
+            }
+        } else if (value != 0) {
+            int insertAt = -index - 1;
+            if (size == cols.length) { // grow the row
+                int newLength = Math.max(4, size * 2);
+                cols = Arrays.copyOf(cols, newLength);
+                values = Arrays.copyOf(values, newLength);
+                rowCols[row] = cols;
+                rowValues[row] = values;
+            }
+            System.arraycopy(cols, insertAt, cols, insertAt + 1, size - insertAt);
+            System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+            cols[insertAt] = col;
+            values[insertAt] = value;
+            rowSizes[row] = size + 1;
+        }
+
+    }
+
+    // sets an entire row in the matrix from dense values, only the nonzeros are kept
+    public void setRow(int row, double[] values) {
+
+        if (values.length != COLS) {
+            throw new IllegalArgumentException("The inputted values do not match the length of the matrix");
+        } else if (!validRow(row)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        int count = 0;
+        for (double value : values) {
+            if (value != 0) count++;
+        }
+
+        int[] cols = new int[count];
+        double[] nonZeros = new double[count];
+        int i = 0;
+        for (int col = 0; col < COLS; col++) {
+            if (values[col] != 0) {
+                cols[i] = col;
+                nonZeros[i] = values[col];
+                i++;
+            }
+        }
+
+        rowCols[row] = cols;
+        rowValues[row] = nonZeros;
+        rowSizes[row] = count;
+
+    }
+
+    // swaps the location of 2 rows
+    public void swapRows(int row1, int row2) {
+
+        if (!validRow(row1) || !validRow(row2)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        swapRowData(row1, row2);
+
+    }
+
+    // multiplies an entire row by a scalar
+    public void scaleRow(int row, double scalar) {
+
+        if (!validRow(row)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        int[] cols = rowCols[row];
+        double[] values = rowValues[row];
+        int size = 0;
+        for (int i = 0; i < rowSizes[row]; i++) {
+            double value = values[i] * scalar;
+
+            // to eliminate floating point errors
+            if (Math.abs(value) >= Matrix.PRECISION) {
+                cols[size] = cols[i];
+                values[size] = value;
+                size++;
+            }
+        }
+        rowSizes[row] = size;
+
+    }
+
+    // adds row1 times scalar to row2
+    public void addRows(int row1, int row2, double scalar) {
+
+        if (!validRow(row1) || !validRow(row2)) {
+            throw new IllegalArgumentException("Inputted row out of bounds");
+        }
+
+        addScaledRow(row1, row2, scalar, -1);
+
+    }
+
+    // puts the matrix into echelon form
+    // rows are chosen as pivots by a Markowitz style ordering: among the rows whose leading entry is in
+    // the pivot column and that are large enough to be stable, the one with the fewest nonzeros is used,
+    // which keeps the fill-in created in the other rows as small as possible
+    // returns the rank (number of pivot rows)
+    public int echelonForm() {
+
+        // bucket every row by the column of its leading entry, as doubly linked lists
+        // zero rows aren't in any bucket
+        int[] bucketHeads = new int[COLS];
+        int[] next = new int[ROWS];
+        int[] previous = new int[ROWS];
+        Arrays.fill(bucketHeads, -1);
+        for (int row = ROWS - 1; row >= 0; row--) {
+            addToBucket(row, bucketHeads, next, previous);
+        }
+
+        int[] pivotRows = new int[ROWS];
+        boolean[] isPivotRow = new boolean[ROWS];
+        int rank = 0;
+        int[] candidates = new int[ROWS];
+
+        for (int col = 0; col < COLS && rank < ROWS; col++) {
+
+            int candidateCount = 0;
+            double largest = 0;
+            for (int row = bucketHeads[col]; row != -1; row = next[row]) {
+                candidates[candidateCount++] = row;
+                largest = Math.max(largest, Math.abs(rowValues[row][0]));
+            }
+
+            if (candidateCount == 0) continue; // no pivot in this column
+
+            int pivot = -1;
+            for (int i = 0; i < candidateCount; i++) {
+                int row = candidates[i];
+                double magnitude = Math.abs(rowValues[row][0]);
+                if (magnitude >= PIVOT_THRESHOLD * largest && (pivot == -1 || rowSizes[row] < rowSizes[pivot]
+                        || (rowSizes[row] == rowSizes[pivot] && magnitude > Math.abs(rowValues[pivot][0])))) {
+                    pivot = row;
+                }
+            }
+
+            pivotRows[rank++] = pivot;
+            isPivotRow[pivot] = true;
+
+            // zero out the rest of the column, every row left in the bucket has a value there
+            double pivotValue = rowValues[pivot][0];
+            for (int i = 0; i < candidateCount; i++) {
+                int row = candidates[i];
+                removeFromBucket(row, bucketHeads, next, previous);
+                if (row != pivot) {
+                    addScaledRow(pivot, row, -rowValues[row][0] / pivotValue, col);
+                    addToBucket(row, bucketHeads, next, previous);
+                }
+            }
+        }
+
+        // put the pivot rows at the top in the order they were picked, followed by the zero rows
+        int[] order = Arrays.copyOf(pivotRows, ROWS);
+        int position = rank;
+        for (int row = 0; row < ROWS; row++) {
+            if (!isPivotRow[row]) {
+                order[position++] = row;
+            }
+        }
+        permuteRows(order);
+
+        return rank;
+    }
+
+    // puts the matrix into reduced echelon form
+    public void reducedEchelonForm() {
+
+        int rank = echelonForm();
+
+        // which row has its pivot in each column, -1 for non pivot columns
+        int[] pivotRowOfCol = new int[COLS];
+        Arrays.fill(pivotRowOfCol, -1);
+        for (int row = 0; row < rank; row++) {
+            pivotRowOfCol[rowCols[row][0]] = row;
+        }
+
+        // go from the bottom up, by the time a row is reached every row below it is already reduced,
+        // so subtracting one of them only clears its pivot column and can't bring back another pivot column
+        for (int row = rank - 1; row >= 0; row--) {
+
+            int i = 1; // skip the leading entry
+            while (i < rowSizes[row]) {
+                int col = rowCols[row][i];
+                int pivotRow = pivotRowOfCol[col];
+                if (pivotRow > row) {
+                    // entries before i are unaffected, the entry at i is removed
+                    addScaledRow(pivotRow, row, -rowValues[row][i], col);
+                } else {
+                    i++;
+                }
+            }
+
+            scaleRow(row, 1 / rowValues[row][0]);
+            rowValues[row][0] = 1; // get rid of floating point error in the pivot itself
+        }
+    }
+
+    public String toString() {
+        return toMatrix().toString();
+    }
+
+    // HELPER FUNCTIONS
+
+    // checks whether an inputted row value is within the bounds of the matrix
+    private boolean validRow(int row) {
+        return row >= 0 && row < ROWS;
+    }
+
+    // checks whether an inputted column value is within the bounds of the matrix
+    private boolean validCol(int col) {
+        return col >= 0 && col < COLS;
+    }
+
+    // replaces targetRow with targetRow + scalar * sourceRow by merging the two sorted rows
+    // values within Matrix.PRECISION of 0 are dropped, as is zeroCol (-1 for none),
+    // which is the column the caller is eliminating and should end up exactly 0
+    private void addScaledRow(int sourceRow, int targetRow, double scalar, int zeroCol) {
+
+        int[] sourceCols = rowCols[sourceRow];
+        double[] sourceValues = rowValues[sourceRow];
+        int sourceSize = rowSizes[sourceRow];
+        int[] targetCols = rowCols[targetRow];
+        double[] targetValues = rowValues[targetRow];
+        int targetSize = rowSizes[targetRow];
+
+        int[] mergedCols = new int[sourceSize + targetSize];
+        double[] mergedValues = new double[sourceSize + targetSize];
+        int size = 0;
+
+        int s = 0;
+        int t = 0;
+        while (s < sourceSize || t < targetSize) {
+            int col;
+            double value;
+            if (t == targetSize || (s < sourceSize && sourceCols[s] < targetCols[t])) {
+                col = sourceCols[s];
+                value = scalar * sourceValues[s++];
+            } else if (s == sourceSize || targetCols[t] < sourceCols[s]) {
+                col = targetCols[t];
+                value = targetValues[t++];
+            } else {
+                col = targetCols[t];
+                value = targetValues[t++] + scalar * sourceValues[s++];
+            }
+
+            // to eliminate floating point errors
+            if (col != zeroCol && Math.abs(value) >= Matrix.PRECISION) {
+                mergedCols[size] = col;
+                mergedValues[size] = value;
+                size++;
+            }
+        }
+
+        rowCols[targetRow] = mergedCols;
+        rowValues[targetRow] = mergedValues;
+        rowSizes[targetRow] = size;
+
+    }
+
+    private void swapRowData(int row1, int row2) {
+
+        int[] tempCols = rowCols[row1];
+        rowCols[row1] = rowCols[row2];
+        rowCols[row2] = tempCols;
+
+        double[] tempValues = rowValues[row1];
+        rowValues[row1] = rowValues[row2];
+        rowValues[row2] = tempValues;
+
+        int tempSize = rowSizes[row1];
+        rowSizes[row1] = rowSizes[row2];
+        rowSizes[row2] = tempSize;
+
+    }
+
+    // rearranges the rows so that new row i is the old row order[i]
+    private void permuteRows(int[] order) {
+
+        int[][] newCols = new int[ROWS][];
+        double[][] newValues = new double[ROWS][];
+        int[] newSizes = new int[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            newCols[row] = rowCols[order[row]];
+            newValues[row] = rowValues[order[row]];
+            newSizes[row] = rowSizes[order[row]];
+        }
+
+        rowCols = newCols;
+        rowValues = newValues;
+        rowSizes = newSizes;
+
+    }
+
+    private void addToBucket(int row, int[] bucketHeads, int[] next, int[] previous) {
+
+        if (rowSizes[row] == 0) return; // zero rows aren't tracked
+
+        int col = rowCols[row][0];
+        next[row] = bucketHeads[col];
+        previous[row] = -1;
+        if (bucketHeads[col] != -1) {
+            previous[bucketHeads[col]] = row;
+        }
+        bucketHeads[col] = row;
+
+    }
+
+    private void removeFromBucket(int row, int[] bucketHeads, int[] next, int[] previous) {
+
+        int col = rowCols[row][0];
+        if (previous[row] != -1) {
+            next[previous[row]] = next[row];
+        } else {
+            bucketHeads[col] = next[row];
+        }
+        if (next[row] != -1) {
+            previous[next[row]] = previous[row];
+        }
+
+    }
+}
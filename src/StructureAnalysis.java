@@ -0,0 +1,157 @@
+// describes where the nonzero values of a matrix are, so Matrix can skip general elimination when the shape
+// allows something cheaper: a triangular matrix's determinant is the product of its diagonal, an upper
+// triangular one is already in echelon form, and a banded one (every value within a few diagonals of the main
+// one, like the tridiagonal systems from discretizing differential equations) is factored in O(n * b^2) by
+// BandedLUDecomposition instead of O(n^3)
+// whether the matrix is symmetric is found separately, since any of the shapes can be, and a symmetric matrix
+// is solved with SymmetricDecomposition instead of LU
+// only the leading square part of the matrix is analysed, so the right hand sides of an augmented matrix
+// can be anything, a matrix with more rows than columns is always GENERAL
+public final class StructureAnalysis {
+
+    public enum Structure { DIAGONAL, UPPER_TRIANGULAR, LOWER_TRIANGULAR, BANDED, GENERAL }
+
+    // a matrix is only treated as banded while its band covers less than this fraction of each row,
+    // wider bands do nearly as much work as general elimination while using more memory
+    private static final double MAX_BAND_FRACTION = 0.5;
+
+    private final Structure structure;
+    private final int size;
+    private final int lowerBandwidth;
+    private final int upperBandwidth;
+    private final boolean zeroOnDiagonal;
+    private final boolean symmetric;
+
+    private StructureAnalysis(Structure structure, int size, int lowerBandwidth, int upperBandwidth,
+                              boolean zeroOnDiagonal, boolean symmetric) {
+        this.structure = structure;
+        this.size = size;
+        this.lowerBandwidth = lowerBandwidth;
+        this.upperBandwidth = upperBandwidth;
+        this.zeroOnDiagonal = zeroOnDiagonal;
+        this.symmetric = symmetric;
+    }
+
+    // scans the values once, stopping early as soon as they can't be anything but GENERAL,
+    // so a dense matrix only costs a couple of rows
+    // Matrix.structure() keeps the result until the matrix changes
+    static StructureAnalysis of(MatrixStorage data) {
+
+        int size = data.getRows();
+        if (size > data.getCols()) {
+            return new StructureAnalysis(Structure.GENERAL, size, -1, -1, false, false);
+        }
+
+        boolean symmetric = isSymmetric(data, size);
+
+        int maxBand = (int) (size * MAX_BAND_FRACTION);
+        int lower = 0;
+        int upper = 0;
+        boolean zeroOnDiagonal = false;
+
+        double[] rowValues = new double[data.getCols()];
+        for (int row = 0; row < size; row++) {
+            data.copyRow(row, rowValues);
+
+            int first = 0;
+            while (first < size && rowValues[first] == 0) first++;
+            if (first == size) { // a zero row doesn't widen the band
+                zeroOnDiagonal = true;
+                continue;
+            }
+
+            int last = size - 1;
+            while (rowValues[last] == 0) last--;
+
+            lower = Math.max(lower, row - first);
+            upper = Math.max(upper, last - row);
+            zeroOnDiagonal |= rowValues[row] == 0;
+
+            // nonzeros on both sides of a wide band, so it isn't triangular or banded
+            if (lower > 0 && upper > 0 && lower + upper >= maxBand) {
+                return new StructureAnalysis(Structure.GENERAL, size, -1, -1, false, symmetric);
+            }
+        }
+
+        Structure structure;
+        if (lower == 0 && upper == 0) {
+            structure = Structure.DIAGONAL;
+        } else if (lower == 0) {
+            structure = Structure.UPPER_TRIANGULAR;
+        } else if (upper == 0) {
+            structure = Structure.LOWER_TRIANGULAR;
+        } else {
+            structure = Structure.BANDED;
+        }
+
+        return new StructureAnalysis(structure, size, lower, upper, zeroOnDiagonal, symmetric);
+    }
+
+    // ACCESSORS
+
+    public Structure getStructure() {
+        return structure;
+    }
+
+    // the number of rows (and columns) of the leading square part that was analysed
+    public int getSize() {
+        return size;
+    }
+
+    // how many diagonals below the main one have nonzeros, -1 for a GENERAL matrix
+    public int getLowerBandwidth() {
+        return lowerBandwidth;
+    }
+
+    // how many diagonals above the main one have nonzeros, -1 for a GENERAL matrix
+    public int getUpperBandwidth() {
+        return upperBandwidth;
+    }
+
+    // whether the main diagonal has a 0 on it, always false for a GENERAL matrix since it isn't checked
+    public boolean hasZeroOnDiagonal() {
+        return zeroOnDiagonal;
+    }
+
+    // whether the leading square part is exactly equal to its transpose
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    public boolean isTriangular() {
+        return structure == Structure.DIAGONAL || structure == Structure.UPPER_TRIANGULAR ||
+                structure == Structure.LOWER_TRIANGULAR;
+    }
+
+    // an upper triangular matrix with every diagonal value nonzero has a pivot in every row already,
+    // so elimination wouldn't change anything
+    public boolean isEchelonForm() {
+        return (structure == Structure.DIAGONAL || structure == Structure.UPPER_TRIANGULAR) && !zeroOnDiagonal;
+    }
+
+    // a short description of the structure, for logging which path was taken
+    public String toString() {
+        String description = structure.toString();
+        if (structure == Structure.BANDED) {
+            description += " (lower " + lowerBandwidth + ", upper " + upperBandwidth + ")";
+        }
+        return symmetric ? "SYMMETRIC " + description : description;
+    }
+
+    // HELPER FUNCTIONS
+
+    // compares the lower triangle to the upper one, stopping at the first difference
+    // so a matrix that isn't symmetric usually only costs a row or two
+    private static boolean isSymmetric(MatrixStorage data, int size) {
+
+        double[] rowValues = new double[data.getCols()];
+        for (int row = 1; row < size; row++) {
+            data.copyRow(row, rowValues);
+            for (int col = 0; col < row; col++) {
+                if (rowValues[col] != data.get(col, row)) return false;
+            }
+        }
+
+        return true;
+    }
+}
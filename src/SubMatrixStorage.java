@@ -0,0 +1,135 @@
+// a read only window onto part of another storage, used for Matrix.subMatrix and Matrix.minor
+// nothing is copied: each row and column is mapped onto the source by adding an offset,
+// then skipping over one excluded row and column (for minors), so making a view is O(1)
+// the source must never change while the view is in use, Matrix gives it a shared copy (see MatrixStorage.share)
+final class SubMatrixStorage implements MatrixStorage {
+
+    // skip value for a view that doesn't leave anything out
+    private static final int NO_SKIP = Integer.MAX_VALUE;
+
+    private final MatrixStorage source;
+
+    private final int ROWS;
+    private final int COLS;
+
+    private final int rowOffset;
+    private final int colOffset;
+
+    // rows and columns of the view from these on are one further along in the source
+    private final int skipRow;
+    private final int skipCol;
+
+    // the whole source row is read into the first buffer and the view's part of it gathered into the second
+    private final ThreadLocal<double[][]> rowBuffers;
+
+    private SubMatrixStorage(MatrixStorage source, int rows, int cols,
+                             int rowOffset, int colOffset, int skipRow, int skipCol) {
+
+        this.source = source;
+        this.ROWS = rows;
+        this.COLS = cols;
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+        this.skipRow = skipRow;
+        this.skipCol = skipCol;
+
+        rowBuffers = ThreadLocal.withInitial(() -> new double[][] {new double[source.getCols()], new double[COLS]});
+
+    }
+
+    // the rows x cols block of source starting at (row, col)
+    static SubMatrixStorage slice(MatrixStorage source, int row, int col, int rows, int cols) {
+
+        // a slice of a slice is just a slice with the offsets added, so views never stack up
+        if (source instanceof SubMatrixStorage) {
+            SubMatrixStorage view = (SubMatrixStorage) source;
+            if (view.skipRow == NO_SKIP && view.skipCol == NO_SKIP) {
+                return new SubMatrixStorage(view.source, rows, cols,
+                        view.rowOffset + row, view.colOffset + col, NO_SKIP, NO_SKIP);
+            }
+        }
+
+        return new SubMatrixStorage(source, rows, cols, row, col, NO_SKIP, NO_SKIP);
+    }
+
+    // source without the row and col
+    static SubMatrixStorage minor(MatrixStorage source, int row, int col) {
+
+        int rows = source.getRows() - 1;
+        int cols = source.getCols() - 1;
+
+        if (source instanceof SubMatrixStorage) {
+            SubMatrixStorage view = (SubMatrixStorage) source;
+            if (view.skipRow == NO_SKIP && view.skipCol == NO_SKIP) {
+                return new SubMatrixStorage(view.source, rows, cols, view.rowOffset, view.colOffset, row, col);
+            }
+        }
+
+        return new SubMatrixStorage(source, rows, cols, 0, 0, row, col);
+    }
+
+    // ACCESSORS
+
+    public int getRows() {
+        return ROWS;
+    }
+
+    public int getCols() {
+        return COLS;
+    }
+
+    public double get(int row, int col) {
+        return source.get(sourceRow(row), colOffset + (col >= skipCol ? col + 1 : col));
+    }
+
+    public void copyRow(int row, double[] dest) {
+
+        double[] sourceValues = rowBuffers.get()[0];
+        source.copyRow(sourceRow(row), sourceValues);
+
+        int before = Math.min(skipCol, COLS);
+        System.arraycopy(sourceValues, colOffset, dest, 0, before);
+        if (before < COLS) {
+            System.arraycopy(sourceValues, colOffset + before + 1, dest, before, COLS - before);
+        }
+
+    }
+
+    public double dotRow(int row, double[] x, int length) {
+        double[] values = rowBuffers.get()[1];
+        copyRow(row, values);
+        return RowKernels.dot(values, 0, x, length);
+    }
+
+    // MUTATORS
+
+    public void set(int row, int col, double value) {
+        throw readOnly();
+    }
+
+    public void setRow(int row, double[] values) {
+        throw readOnly();
+    }
+
+    public void swapRows(int row1, int row2) {
+        throw readOnly();
+    }
+
+    public void scaleRow(int row, double scalar) {
+        throw readOnly();
+    }
+
+    public void addRows(int row1, int row2, double scalar) {
+        throw readOnly();
+    }
+
+    // HELPER FUNCTIONS
+
+    private int sourceRow(int row) {
+        return rowOffset + (row >= skipRow ? row + 1 : row);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("A submatrix view can't be changed, copy() it first");
+    }
+}
@@ -0,0 +1,440 @@
+// factors a symmetric matrix, only ever storing its lower triangle: row i keeps the i + 1 values up to the
+// diagonal, which is half the memory of the full matrix
+// a positive definite matrix (covariance and stiffness matrices) is factored with Cholesky, A = L L^T,
+// which needs half the work of LU and no pivoting
+// anything else is factored again as L D L^T with Bunch-Kaufman pivoting, where D has 1x1 and 2x2 blocks
+// and rows and columns are swapped together so the matrix stays symmetric
+public class SymmetricDecomposition {
+
+    public enum Method { CHOLESKY, LDLT }
+
+    // Bunch-Kaufman's constant, (1 + sqrt(17)) / 8, which balances element growth between 1x1 and 2x2 pivots
+    private static final double ALPHA = (1 + Math.sqrt(17)) / 8;
+
+    private final int SIZE;
+
+    // the factors, L (and D for LDLT) packed into the lower triangle
+    private final double[][] lower;
+
+    private Method method;
+
+    // only used by LDLT, pivots[k] is the row swapped with row k, or -(row + 1) for both rows of a 2x2 block,
+    // and the swaps are replayed in order when solving instead of being applied to L (like LAPACK)
+    private final int[] pivots;
+
+    private boolean singular;
+
+    // largest value a pivot can have and still only be rounding error, relative to the largest value
+    // in the matrix the same way as LUDecomposition.pivotTolerance
+    private double tolerance;
+
+    // factors the square matrix, only the values on and below the diagonal are read
+    // so the values above it are assumed to match
+    public SymmetricDecomposition(Matrix m) {
+        this(checkSquare(m), (row, dest) -> {
+            for (int col = 0; col <= row; col++) {
+                dest[col] = m.get(row, col);
+            }
+        });
+    }
+
+    // factors the leading square part of the storage, without changing it
+    SymmetricDecomposition(MatrixStorage data) {
+        this(data.getRows(), rowsOf(data));
+    }
+
+    private SymmetricDecomposition(int size, RowSource source) {
+
+        this.SIZE = size;
+
+        lower = new double[SIZE][];
+        for (int row = 0; row < SIZE; row++) {
+            lower[row] = new double[row + 1];
+        }
+        pivots = new int[SIZE];
+
+        load(source);
+        method = Method.CHOLESKY;
+        if (!factorCholesky()) {
+            // not positive definite, so start again from the original values
+            load(source);
+            method = Method.LDLT;
+            factorLDLT();
+        }
+
+    }
+
+    // ACCESSORS
+
+    public int getSize() {
+        return SIZE;
+    }
+
+    // which factorization was used, CHOLESKY unless the matrix wasn't positive definite
+    public Method getMethod() {
+        return method;
+    }
+
+    // whether a pivot was no larger than rounding error (see tolerance), the same test as LUDecomposition.isSingular
+    // factoring stops at the first zero pivot, so the factors are only complete when this is false
+    public boolean isSingular() {
+        return singular;
+    }
+
+    // the product of the diagonal of L squared for Cholesky, or the product of the determinants of the blocks of D
+    // for LDLT, since swapping a row and the matching column together doesn't change the determinant
+    public double determinant() {
+
+        if (singular) return 0;
+
+        double det = 1;
+        if (method == Method.CHOLESKY) {
+            for (int i = 0; i < SIZE; i++) {
+                det *= lower[i][i] * lower[i][i];
+            }
+            return det;
+        }
+
+        for (int k = 0; k < SIZE; k++) {
+            if (pivots[k] >= 0) {
+                det *= lower[k][k];
+            } else {
+                det *= lower[k][k] * lower[k + 1][k + 1] - lower[k + 1][k] * lower[k + 1][k];
+                k++;
+            }
+        }
+        return det;
+    }
+
+    // solves Ax = b for x
+    public double[] solve(double[] b) {
+
+        if (b.length != SIZE) {
+            throw new IllegalArgumentException("The right hand side must have the same number of rows as the matrix");
+        }
+        if (singular) {
+            throw new IllegalStateException("The matrix is singular, so the system does not have a unique solution");
+        }
+
+        double[] x = b.clone();
+        if (method == Method.CHOLESKY) {
+            solveCholesky(x);
+        } else {
+            solveLDLT(x);
+        }
+
+        return x;
+    }
+
+    // HELPER FUNCTIONS
+
+    private static int checkSquare(Matrix m) {
+        if (m.getRows() != m.getCols()) {
+            throw new IllegalArgumentException("Only a square matrix can be given a symmetric decomposition");
+        }
+        return m.getRows();
+    }
+
+    private static RowSource rowsOf(MatrixStorage data) {
+        double[] rowValues = new double[data.getCols()];
+        return (row, dest) -> {
+            data.copyRow(row, rowValues);
+            System.arraycopy(rowValues, 0, dest, 0, row + 1);
+        };
+    }
+
+    // copies the lower triangle in from the source, and works out the pivot tolerance from it
+    private void load(RowSource source) {
+
+        double largest = 0;
+        for (int row = 0; row < SIZE; row++) {
+            source.copyLower(row, lower[row]);
+            for (double value : lower[row]) {
+                largest = Math.max(largest, Math.abs(value));
+            }
+        }
+
+        tolerance = SIZE * Math.ulp(1.0) * largest;
+    }
+
+    // row by row Cholesky, every inner loop is a dot product of two contiguous rows of L
+    // rows are done 4 at a time, so each finished row above them is read once for the whole group
+    // (instead of once per row) and the group's dot products run side by side instead of one after another
+    // returns false as soon as a pivot isn't larger than the tolerance, leaving the values half factored
+    private boolean factorCholesky() {
+
+        int start = 0;
+        for (; start + 4 <= SIZE; start += 4) {
+            double[] row0 = lower[start];
+            double[] row1 = lower[start + 1];
+            double[] row2 = lower[start + 2];
+            double[] row3 = lower[start + 3];
+
+            for (int j = 0; j < start; j++) {
+                double[] rowJ = lower[j];
+                double sum0 = row0[j];
+                double sum1 = row1[j];
+                double sum2 = row2[j];
+                double sum3 = row3[j];
+                for (int k = 0; k < j; k++) {
+                    double value = rowJ[k];
+                    sum0 -= row0[k] * value;
+                    sum1 -= row1[k] * value;
+                    sum2 -= row2[k] * value;
+                    sum3 -= row3[k] * value;
+                }
+                double pivot = rowJ[j];
+                row0[j] = sum0 / pivot;
+                row1[j] = sum1 / pivot;
+                row2[j] = sum2 / pivot;
+                row3[j] = sum3 / pivot;
+            }
+
+            if (!factorRows(start, start + 4, start)) return false;
+        }
+
+        // the rows left over after the last full group
+        return factorRows(start, SIZE, 0);
+    }
+
+    // finishes rows from start to end, whose values left of fromCol are already done
+    private boolean factorRows(int start, int end, int fromCol) {
+
+        for (int i = start; i < end; i++) {
+            double[] rowI = lower[i];
+            for (int j = fromCol; j <= i; j++) {
+                double[] rowJ = lower[j];
+                double sum = rowI[j];
+                for (int k = 0; k < j; k++) {
+                    sum -= rowI[k] * rowJ[k];
+                }
+
+                if (j < i) {
+                    rowI[j] = sum / rowJ[j];
+                } else if (sum <= tolerance) {
+                    return false;
+                } else {
+                    rowI[i] = Math.sqrt(sum);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Bunch-Kaufman diagonal pivoting, column by column from the top left
+    private void factorLDLT() {
+
+        double[] column = new double[SIZE];
+        double[] column2 = new double[SIZE];
+
+        int k = 0;
+        while (k < SIZE) {
+
+            // the largest value below the diagonal in column k
+            double diagonal = Math.abs(lower[k][k]);
+            int maxRow = k;
+            double colMax = 0;
+            for (int i = k + 1; i < SIZE; i++) {
+                double magnitude = Math.abs(lower[i][k]);
+                if (magnitude > colMax) {
+                    colMax = magnitude;
+                    maxRow = i;
+                }
+            }
+
+            if (Math.max(diagonal, colMax) <= tolerance) {
+                singular = true;
+                return;
+            }
+
+            int step = 1;
+            int swapWith = k;
+            if (diagonal < ALPHA * colMax) {
+
+                // the largest value off the diagonal in row and column maxRow of what's left
+                double rowMax = 0;
+                for (int j = k; j < maxRow; j++) {
+                    rowMax = Math.max(rowMax, Math.abs(lower[maxRow][j]));
+                }
+                for (int i = maxRow + 1; i < SIZE; i++) {
+                    rowMax = Math.max(rowMax, Math.abs(lower[i][maxRow]));
+                }
+
+                if (diagonal * rowMax < ALPHA * colMax * colMax) {
+                    swapWith = maxRow;
+                    // neither diagonal value is large enough to pivot on by itself, so they're used as a 2x2 block
+                    if (Math.abs(lower[maxRow][maxRow]) < ALPHA * rowMax) {
+                        step = 2;
+                    }
+                }
+            }
+
+            // the row that maxRow is swapped into, the second row of a 2x2 block
+            int target = k + step - 1;
+            if (swapWith != target) {
+                swapSymmetric(k, target, swapWith);
+            }
+
+            if (step == 1) {
+                pivots[k] = swapWith;
+
+                double pivot = lower[k][k];
+                for (int i = k + 1; i < SIZE; i++) {
+                    column[i] = lower[i][k];
+                }
+
+                // A22 -= l d l^T, then the column becomes l
+                for (int i = k + 1; i < SIZE; i++) {
+                    double multiplier = column[i] / pivot;
+                    if (multiplier != 0) {
+                        double[] rowArr = lower[i];
+                        for (int j = k + 1; j <= i; j++) {
+                            rowArr[j] -= multiplier * column[j];
+                        }
+                    }
+                    lower[i][k] = multiplier;
+                }
+            } else {
+                pivots[k] = -(swapWith + 1);
+                pivots[k + 1] = -(swapWith + 1);
+
+                double d11 = lower[k][k];
+                double d21 = lower[k + 1][k];
+                double d22 = lower[k + 1][k + 1];
+                double det = d11 * d22 - d21 * d21;
+                for (int i = k + 2; i < SIZE; i++) {
+                    column[i] = lower[i][k];
+                    column2[i] = lower[i][k + 1];
+                }
+
+                // A22 -= W D W^T, then the two columns become W D^-1
+                for (int i = k + 2; i < SIZE; i++) {
+                    double w1 = (column[i] * d22 - column2[i] * d21) / det;
+                    double w2 = (column2[i] * d11 - column[i] * d21) / det;
+                    double[] rowArr = lower[i];
+                    for (int j = k + 2; j <= i; j++) {
+                        rowArr[j] -= w1 * column[j] + w2 * column2[j];
+                    }
+                    rowArr[k] = w1;
+                    rowArr[k + 1] = w2;
+                }
+            }
+
+            k += step;
+        }
+    }
+
+    // swaps row and column a with row and column b (a < b) in the part of the matrix from column k on,
+    // touching only the lower triangle
+    private void swapSymmetric(int k, int a, int b) {
+
+        for (int i = b + 1; i < SIZE; i++) {
+            double temp = lower[i][a];
+            lower[i][a] = lower[i][b];
+            lower[i][b] = temp;
+        }
+        for (int j = a + 1; j < b; j++) {
+            double temp = lower[j][a];
+            lower[j][a] = lower[b][j];
+            lower[b][j] = temp;
+        }
+
+        double temp = lower[a][a];
+        lower[a][a] = lower[b][b];
+        lower[b][b] = temp;
+
+        // the first column of a 2x2 block is already in the trailing part
+        for (int j = k; j < a; j++) {
+            temp = lower[a][j];
+            lower[a][j] = lower[b][j];
+            lower[b][j] = temp;
+        }
+
+    }
+
+    // L y = b then L^T x = y, in place
+    private void solveCholesky(double[] x) {
+
+        for (int i = 0; i < SIZE; i++) {
+            double[] rowArr = lower[i];
+            double value = x[i];
+            for (int k = 0; k < i; k++) {
+                value -= rowArr[k] * x[k];
+            }
+            x[i] = value / rowArr[i];
+        }
+
+        for (int i = SIZE - 1; i >= 0; i--) {
+            double[] rowArr = lower[i];
+            double value = x[i] / rowArr[i];
+            x[i] = value;
+            for (int k = 0; k < i; k++) {
+                x[k] -= rowArr[k] * value;
+            }
+        }
+
+    }
+
+    // replays the swaps with L D y = P b going forwards, then L^T x = y going backwards, in place
+    private void solveLDLT(double[] x) {
+
+        int k = 0;
+        while (k < SIZE) {
+            if (pivots[k] >= 0) {
+                swap(x, k, pivots[k]);
+                for (int i = k + 1; i < SIZE; i++) {
+                    x[i] -= lower[i][k] * x[k];
+                }
+                x[k] /= lower[k][k];
+                k++;
+            } else {
+                swap(x, k + 1, -pivots[k] - 1);
+                for (int i = k + 2; i < SIZE; i++) {
+                    x[i] -= lower[i][k] * x[k] + lower[i][k + 1] * x[k + 1];
+                }
+
+                double d11 = lower[k][k];
+                double d21 = lower[k + 1][k];
+                double d22 = lower[k + 1][k + 1];
+                double det = d11 * d22 - d21 * d21;
+                double x1 = x[k];
+                double x2 = x[k + 1];
+                x[k] = (d22 * x1 - d21 * x2) / det;
+                x[k + 1] = (d11 * x2 - d21 * x1) / det;
+                k += 2;
+            }
+        }
+
+        k = SIZE - 1;
+        while (k >= 0) {
+            if (pivots[k] >= 0) {
+                for (int i = k + 1; i < SIZE; i++) {
+                    x[k] -= lower[i][k] * x[i];
+                }
+                swap(x, k, pivots[k]);
+                k--;
+            } else {
+                for (int i = k + 1; i < SIZE; i++) {
+                    x[k] -= lower[i][k] * x[i];
+                    x[k - 1] -= lower[i][k - 1] * x[i];
+                }
+                swap(x, k, -pivots[k] - 1);
+                k -= 2;
+            }
+        }
+
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
+    }
+
+    // where the rows of the matrix being factored come from, so they can be read again for LDLT
+    private interface RowSource {
+        // copies the values of the row up to and including the diagonal
+        void copyLower(int row, double[] dest);
+    }
+}
@@ -0,0 +1,67 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// RowKernels' loops written with the Vector API, so they always run as SIMD instructions instead of depending
+// on the JIT to vectorize them
+// jdk.incubator.vector needs --add-modules to compile and run, so this is kept out of src and compiled on its own
+// (see the README), RowKernels uses it whenever it is on the class path and the module is available
+// every lane does the same multiply then add as the scalar loops, so the results are identical to them
+final class VectorRowKernels implements RowKernels.VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public void scale(double[] values, int offset, int length, double scalar) {
+
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, values, offset + i).mul(scalar).intoArray(values, offset + i);
+        }
+        for (; i < length; i++) {
+            values[offset + i] *= scalar;
+        }
+
+    }
+
+    public void axpy(double[] source, int sourceOffset, double[] target, int targetOffset, int length,
+                     double scalar) {
+
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector sourceValues = DoubleVector.fromArray(SPECIES, source, sourceOffset + i);
+            DoubleVector.fromArray(SPECIES, target, targetOffset + i).add(sourceValues.mul(scalar))
+                    .intoArray(target, targetOffset + i);
+        }
+        for (; i < length; i++) {
+            target[targetOffset + i] += source[sourceOffset + i] * scalar;
+        }
+
+    }
+
+    public int snapToZero(double[] values, int offset, int length, double precision) {
+
+        int snapped = 0;
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector vector = DoubleVector.fromArray(SPECIES, values, offset + i);
+            VectorMask<Double> small = vector.abs().compare(VectorOperators.LT, precision);
+            if (small.anyTrue()) {
+                snapped += small.and(vector.compare(VectorOperators.NE, 0)).trueCount();
+                vector.blend(zero, small).intoArray(values, offset + i);
+            }
+        }
+        for (; i < length; i++) {
+            if (Math.abs(values[offset + i]) < precision) {
+                if (values[offset + i] != 0) snapped++;
+                values[offset + i] = 0;
+            }
+        }
+
+        return snapped;
+    }
+}